@@ -25,6 +25,9 @@ import es.ua.alex952.exceptions.KeyNotConfigured;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Class that represents the base class of all Crowdflower resources
@@ -66,6 +69,30 @@ public abstract class CFHelper {
 	protected String configFile;
 	
 	protected JSONParams					dataParams;
+	
+	/**
+	 * Limiter of the requests to the server, shared by every helper.
+	 */
+	private static RateLimiter				limiter = new RateLimiter(10, 10);
+	
+	/**
+	 * Configuration of the current limiter: requests per second and burst.
+	 */
+	private static double					limiterRate = 10;
+	private static int						limiterBurst = 10;
+	
+	/**
+	 * Policy for retrying the failed requests to the server.
+	 */
+	private static RetryPolicy				retryPolicy = new RetryPolicy(5, 1000);
+	
+	/**
+	 * Configuration of the current policy: attempts and base delay.
+	 */
+	private static int						retryAttempts = 5;
+	private static long						retryDelay = 1000;
+	
+	private static final Logger				logger = LoggerFactory.getLogger(CFHelper.class);
 
 	public JSONParams getDataParams() {
 		return dataParams;
@@ -90,6 +117,7 @@ public abstract class CFHelper {
 
 	/**
 	 * Utility method for retrieving the API key from the configuration file.
+	 * It also configures the shared connections of {@link ConnectionHelper}.
 	 * 
 	 * @return The key itself or null in case of error.
 	 */
@@ -100,10 +128,136 @@ public abstract class CFHelper {
 		} catch (IOException e) {
 			return null;
 		}
+		
+		ConnectionHelper.configure(p);
+		configureRequests(p);
 
 		return p.getProperty("CrowdFlowerKey");
 	}
 
+	/**
+	 * Configures the rate limit and the retries of the requests to the 
+	 * server, from the properties CrowdFlowerRequestsPerSecond (0 for no
+	 * limit), CrowdFlowerBurst, RetryMaxAttempts and RetryBaseDelay (in 
+	 * milliseconds). Missing or invalid values take their default.
+	 * 
+	 * @param p The properties loaded from the configuration file.
+	 */
+	private static synchronized void configureRequests(Properties p) {
+		double rate = parseDouble(p, "CrowdFlowerRequestsPerSecond", 10);
+		int burst = (int) parseLong(p, "CrowdFlowerBurst", 10);
+		int attempts = (int) parseLong(p, "RetryMaxAttempts", 5);
+		long delay = parseLong(p, "RetryBaseDelay", 1000);
+		
+		//The limiter is shared, so it is only replaced if the configuration 
+		//changes, keeping the tokens already taken
+		if (rate != limiterRate || burst != limiterBurst) {
+			limiter = new RateLimiter(rate, burst);
+			limiterRate = rate;
+			limiterBurst = burst;
+		}
+		
+		if (attempts != retryAttempts || delay != retryDelay) {
+			retryPolicy = new RetryPolicy(attempts, delay);
+			retryAttempts = attempts;
+			retryDelay = delay;
+		}
+	}
+	
+	private static double parseDouble(Properties p, String key, double def) {
+		String value = p.getProperty(key);
+		
+		if (value == null) {
+			return def;
+		}
+		
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value \"{}\" for {}, using {}", new Object[] {value, key, def});
+			return def;
+		}
+	}
+	
+	private static long parseLong(Properties p, String key, long def) {
+		String value = p.getProperty(key);
+		
+		if (value == null) {
+			return def;
+		}
+		
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value \"{}\" for {}, using {}", new Object[] {value, key, def});
+			return def;
+		}
+	}
+	
+	/**
+	 * Does a GET request, retrying it if it fails. See {@link RetryPolicy}.
+	 * 
+	 * @param wr The resource requested
+	 * @param c The class of the response
+	 * @return The response
+	 * @throws IOException If the request failed after every attempt
+	 */
+	protected <T> T get(final WebResource wr, final Class<T> c) throws IOException {
+		return this.request(new Callable<T>() {
+
+			@Override
+			public T call() {
+				return wr.get(c);
+			}
+		}, true);
+	}
+	
+	/**
+	 * Does a request to the server, once there is room for it in the rate
+	 * limit. The request is retried as told by the {@link RetryPolicy}.
+	 * 
+	 * @param request The request
+	 * @param idempotent Whether the request can be done twice safely. If it 
+	 * can't, it's only retried when it was throttled by the server.
+	 * @return The response
+	 * @throws IOException If the request failed after every attempt
+	 */
+	protected <T> T request(Callable<T> request, boolean idempotent) throws IOException {
+		RateLimiter requestLimiter;
+		RetryPolicy requestPolicy;
+		synchronized (CFHelper.class) {
+			requestLimiter = limiter;
+			requestPolicy = retryPolicy;
+		}
+		
+		try {
+			for (int attempt = 1; ; attempt++) {
+				requestLimiter.acquire();
+				
+				try {
+					return request.call();
+				} catch (RuntimeException e) {
+					long delay = requestPolicy.getDelay(e, attempt, idempotent);
+					
+					if (delay < 0) {
+						throw e;
+					}
+					
+					Thread.sleep(delay);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to request the server");
+		} catch (IOException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Gets all the resources of an inherited class of {@link CFHelper}.
 	 * 
@@ -113,7 +267,7 @@ public abstract class CFHelper {
 	public JSONParams getAll() throws IOException {
 		WebResource wr = ConnectionHelper.getResource(this.baseUrl, this.paths, this.type, this.queryParams);
 
-		String res = wr.get(String.class);
+		String res = this.get(wr, String.class);
 		
 		return new JSONParams(res);
 	}
@@ -131,7 +285,7 @@ public abstract class CFHelper {
 		
 		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
 
-		String res = wr.get(String.class);
+		String res = this.get(wr, String.class);
 		
 		return new JSONParams(res);
 		
@@ -144,8 +298,8 @@ public abstract class CFHelper {
 	 * @throws IOException 
 	 */
 	public JSONParams create() throws IOException {
-		WebResource wr = ConnectionHelper.getResource(this.baseUrl, this.paths, this.type, this.queryParams);
-		Form f = new Form();
+		final WebResource wr = ConnectionHelper.getResource(this.baseUrl, this.paths, this.type, this.queryParams);
+		final Form f = new Form();
 		
 		HashMap<String, String> hashParams = this.dataParams.formatAsHash();
 
@@ -155,7 +309,13 @@ public abstract class CFHelper {
 			f.add(postPrepend + "[" + key + "]", value);
 		}
 
-		String response = wr.type("application/x-www-form-urlencoded").post(String.class, f);
+		String response = this.request(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return wr.type("application/x-www-form-urlencoded").post(String.class, f);
+			}
+		}, false);
 
 		return new JSONParams(response);
 	}
@@ -20,16 +20,103 @@ package es.ua.alex952.cf_helpers;
 
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Properties;
 
 /**
  * An utility class to serve to the web resource creation purposes.
  * 
+ * All the resources are created from one shared {@link Client}, so the
+ * underlying connections are kept alive and reused between requests instead
+ * of opening a new connection (and TLS handshake) for each one of them.
+ * 
  * @author alex952
  */
 public class ConnectionHelper {
 
+	/**
+	 * Default maximum number of idle connections kept alive per host.
+	 */
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+	
+	/**
+	 * Default connect timeout in milliseconds.
+	 */
+	private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	
+	/**
+	 * Default read timeout in milliseconds.
+	 */
+	private static final int DEFAULT_READ_TIMEOUT = 60000;
+	
+	/**
+	 * Chunk size in bytes of the request bodies sent by streaming resources.
+	 */
+	private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+	
+	/**
+	 * Shared client, lazily created. Jersey clients are thread safe once 
+	 * configured, so one instance serves every helper and translator.
+	 */
+	private static Client client = null;
+	
+	private static int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private static int readTimeout = DEFAULT_READ_TIMEOUT;
+
+	/**
+	 * Configures the shared client from the configuration file properties.
+	 * 
+	 * Recognized properties are MaxConnectionsPerHost (idle connections kept
+	 * alive per host), ConnectTimeout and ReadTimeout (both in milliseconds).
+	 * The connection pool size is read by the JVM when the first connection is
+	 * opened, so this method should be called before any request is done.
+	 * 
+	 * @param p The properties loaded from the configuration file.
+	 */
+	public static synchronized void configure(Properties p) {
+		int maxConnections = parseInt(p.getProperty("MaxConnectionsPerHost"), DEFAULT_MAX_CONNECTIONS);
+		
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+		
+		connectTimeout = parseInt(p.getProperty("ConnectTimeout"), DEFAULT_CONNECT_TIMEOUT);
+		readTimeout = parseInt(p.getProperty("ReadTimeout"), DEFAULT_READ_TIMEOUT);
+		
+		if (client != null) {
+			client.setConnectTimeout(connectTimeout);
+			client.setReadTimeout(readTimeout);
+		}
+	}
+	
+	/**
+	 * Returns the shared client, creating it the first time.
+	 * 
+	 * @return The {@link Client} used for every web resource.
+	 */
+	public static synchronized Client getClient() {
+		if (client == null) {
+			client = Client.create();
+			client.setConnectTimeout(connectTimeout);
+			client.setReadTimeout(readTimeout);
+		}
+		
+		return client;
+	}
+	
+	private static int parseInt(String value, int def) {
+		if (value == null) {
+			return def;
+		}
+		
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
 	/**
 	 * Main creator and the simpler of all of them.
 	 * 
@@ -38,13 +125,7 @@ public class ConnectionHelper {
 	 * any kind of REST operation with the given url.
 	 */
 	public static WebResource getResource(String url) {
-		Client c;
-		WebResource wr;
-
-		c = Client.create();
-		wr = c.resource(url);
-		
-		return wr;
+		return getClient().resource(url);
 	}
 
 	/**
@@ -93,4 +174,24 @@ public class ConnectionHelper {
 		
 		return wr;
 	}
+
+	/**
+	 * Creator for resources whose request body is streamed. The body is sent 
+	 * with chunked transfer encoding, so it's never buffered in memory
+	 * before being sent.
+	 * 
+	 * @param url Url that points to the web service.
+	 * @param paths The collection of paths to append to the base url.
+	 * @param type The type of the response.
+	 * @param queryParams The query parameters of the web resource.
+	 * @return An object of the class {@link WebResource} able to invoke.
+	 * any kind of REST operation with the given url.
+	 */
+	public static WebResource getStreamingResource(String url, ArrayList<String> paths, String type, Map<String, String> queryParams) {
+		WebResource wr = ConnectionHelper.getResource(url, paths, type, queryParams);
+		
+		wr.setProperty(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, STREAMING_CHUNK_SIZE);
+		
+		return wr;
+	}
 }
@@ -21,16 +21,40 @@ package es.ua.alex952.cf_helpers;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.representation.Form;
 import es.ua.alex952.cf_helpers.params.JSONParams;
+import es.ua.alex952.cf_helpers.params.JSONPath;
+import es.ua.alex952.cf_helpers.params.JSONStreamReader;
+import es.ua.alex952.cf_helpers.result_helpers.CSVWriter;
 import es.ua.alex952.cf_helpers.result_helpers.HTMLGenerator;
+import es.ua.alex952.cf_helpers.result_helpers.JobResults;
+import es.ua.alex952.cf_helpers.result_helpers.JudgmentStore;
 import es.ua.alex952.cf_helpers.result_helpers.KappaRaters;
+import es.ua.alex952.cf_helpers.result_helpers.MultiRaterAgreement;
+import es.ua.alex952.cf_helpers.result_helpers.RaterPairMap;
+import es.ua.alex952.cf_helpers.result_helpers.ReportGenerator;
+import es.ua.alex952.cf_helpers.result_helpers.SVGReportGenerator;
+import es.ua.alex952.cf_helpers.result_helpers.ScoreAggregator;
+import es.ua.alex952.cf_helpers.result_helpers.UnitJudgments;
 import es.ua.alex952.cf_helpers.translation_services.ApertiumTranslator;
 import es.ua.alex952.cf_helpers.translation_services.BingTranslator;
+import es.ua.alex952.cf_helpers.translation_services.CachedService;
 import es.ua.alex952.cf_helpers.translation_services.Service;
+import es.ua.alex952.cf_helpers.translation_services.TranslationCache;
+import es.ua.alex952.cf_helpers.translation_services.TranslationPool;
 import es.ua.alex952.exceptions.KeyNotConfigured;
 import es.ua.alex952.exceptions.ParameterNeeded;
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,10 +79,112 @@ public class JobsCF extends CFHelper {
 	private String LO;
 	private String LM;
 	
+	/**
+	 * Number of translations running concurrently while creating the data.
+	 */
+	private int translationThreads = 4;
+	
+	/**
+	 * Number of units fetched concurrently while collecting the results.
+	 */
+	private int fetchThreads = 8;
+	
+	/**
+	 * Whether the kappa of every pair of raters is computed.
+	 */
+	private boolean pairwiseKappa = true;
+	
+	/**
+	 * Limits of the kappa tables of the report: pairs listed by service (0
+	 * for all), units in common of a listed pair and pairs in each page.
+	 */
+	private int kappaTopPairs = 0;
+	private int kappaMinJudgments = 1;
+	private int kappaPageSize = 500;
+	
+	/**
+	 * Directory where the data of the report's charts is written, next to
+	 * the report (null to inline the data in the report).
+	 */
+	private File reportDataDir = null;
+	
+	/**
+	 * Whether the report is rendered here, with no scripts, so it can be
+	 * read offline. See {@link SVGReportGenerator}.
+	 */
+	private boolean offlineReport = false;
+	
+	/**
+	 * Directory of the local stores of the results of the jobs (null if 
+	 * they aren't stored). See {@link JudgmentStore}.
+	 */
+	private File storeDir = null;
+	
+	/**
+	 * Results collected by {@link JobsCF#poll()}: the latest judgments and
+	 * scores of each unit (to take them out when the unit changes) and a 
+	 * SHA-256 digest of its aggregated entry (to tell when it changes; a 
+	 * shorter hash could miss a change on a collision).
+	 */
+	private JobResults polled = null;
+	private LinkedHashMap<String, UnitJudgments> polledUnits = null;
+	private HashMap<String, double[][]> polledScores = null;
+	private HashMap<String, byte[]> polledEntries = null;
+	private JudgmentStore pollStore = null;
+	private int polledJudgments = 0;
+	
+	/**
+	 * Judgments the job will have when it finishes, as of the last check of
+	 * its state (0 if unknown).
+	 */
+	private int expectedJudgments = 0;
+	
+	/**
+	 * Bounds of the wait of the daemon between checks of the job, in 
+	 * milliseconds.
+	 */
+	private long pollMinInterval = 10000;
+	private long pollMaxInterval = 1800000;
+	
+	/**
+	 * Number of jobs checked at once by the daemon.
+	 */
+	private int daemonThreads = 4;
+	
+	/**
+	 * File where the judgments of every unit are written, and its encoding.
+	 */
+	private String resultsFile = "results.csv";
+	private String resultsEncoding = "UTF-8";
+	
+	/**
+	 * Cache of the translations done by the services (null if disabled).
+	 */
+	private TranslationCache translationCache = null;
+	
+	/**
+	 * Number of units uploaded in each request when populating the job.
+	 */
+	private int chunkSize = 1000;
+	
+	/**
+	 * Journal where the population progress is recorded.
+	 */
+	private String journalPath = "population.journal";
 	
 	
 	private final Logger logger = LoggerFactory.getLogger(JobsCF.class);
 	
+	/**
+	 * Factory of the generators used for writing the units.
+	 */
+	private static final JsonFactory jsonFactory = JSONParams.getJsonFactory();
+	
+	private static final JSONPath ID = JSONPath.compile("/id");
+	private static final JSONPath STATE = JSONPath.compile("/state");
+	private static final JSONPath UNITS_COUNT = JSONPath.compile("/units_count");
+	private static final JSONPath JUDGMENTS_PER_UNIT = JSONPath.compile("/judgments_per_unit");
+	
 	private String[] channels;
 
 	public void setPathLO(String pathLO) {
@@ -117,7 +243,43 @@ public class JobsCF extends CFHelper {
 					new BingTranslator(p.getProperty("BingClientId"), p.getProperty("BingClientSecret"))
 				};
 				
+				String cachePath = p.getProperty("TranslationCache", "translations.cache");
+				if (!cachePath.equals("")) {
+					int cacheSize = Integer.parseInt(p.getProperty("TranslationCacheSize", "100000"));
+					this.translationCache = new TranslationCache(cachePath, cacheSize);
+					
+					for (int i = 0; i < this.services.length; i++) {
+						this.services[i] = new CachedService(this.services[i], this.translationCache);
+					}
+				}
+				
 				this.channels = p.getProperty("Channels").split(",");
+				
+				this.translationThreads = Integer.parseInt(p.getProperty("TranslationThreads", "4"));
+				this.fetchThreads = Math.max(1, Integer.parseInt(p.getProperty("FetchThreads", "8")));
+				this.pairwiseKappa = Boolean.parseBoolean(p.getProperty("PairwiseKappa", "true"));
+				this.pollMinInterval = Long.parseLong(p.getProperty("PollMinInterval", "10000"));
+				this.pollMaxInterval = Long.parseLong(p.getProperty("PollMaxInterval", "1800000"));
+				this.daemonThreads = Math.max(1, Integer.parseInt(p.getProperty("DaemonThreads", "4")));
+				this.kappaTopPairs = Integer.parseInt(p.getProperty("KappaTableTopPairs", "0"));
+				this.kappaMinJudgments = Integer.parseInt(p.getProperty("KappaTableMinJudgments", "1"));
+				this.kappaPageSize = Math.max(1, Integer.parseInt(p.getProperty("KappaTablePageSize", "500")));
+				
+				this.offlineReport = Boolean.parseBoolean(p.getProperty("OfflineReport", "false"));
+				this.resultsFile = p.getProperty("ResultsFile", "results.csv");
+				this.resultsEncoding = p.getProperty("ResultsEncoding", "UTF-8");
+				
+				String store = p.getProperty("JudgmentStoreDirectory", "judgments");
+				if (!store.isEmpty()) {
+					this.storeDir = new File(store);
+				}
+				
+				String dataDir = p.getProperty("ReportDataDirectory", "");
+				if (!dataDir.isEmpty()) {
+					this.reportDataDir = new File(dataDir);
+				}
+				this.chunkSize = Math.max(1, Integer.parseInt(p.getProperty("UploadChunkSize", "1000")));
+				this.journalPath = p.getProperty("PopulationJournal", "population.journal");
 			} catch (IOException e) {
 				this.shuffler = new SentenceShuffler(2);
 			}
@@ -152,47 +314,161 @@ public class JobsCF extends CFHelper {
 	 * stored in the {@link JSONParams} object of the class, and builds up the
 	 * Google graph for the showcasing of them.
 	 *
-	 * @return The html graph generated with the results of the job.
+	 * @param out Where the html graph generated with the results of the job
+	 * is written. It's flushed but not closed. If ReportDataDirectory is 
+	 * configured, the data of the charts is written to that directory, which
+	 * must be next to the graph. With OfflineReport, the graph is rendered
+	 * as a self-contained page instead.
+	 * @return Whether the results could be retrieved. If they couldn't, 
+	 * nothing is written.
+	 * @throws IOException If the graph can't be written
 	 */
-	public String processResults() {
+	public boolean processResults(Writer out) throws IOException {
 		String id = this.getParameter("id");
-		HashMap<String, HashMap<String, KappaRaters>> raters = null;
-		JSONParams judgmentsJSON = null;
+		JobResults results = new JobResults(this.getServiceNames(), this.pairwiseKappa);
+		JudgmentStore store = null;
 
 		try {
-			raters = this.getRatersJudgements();
-			judgmentsJSON = this.getJudgments();
+			store = this.openStore(true);
+			
+			this.fetchUnits(results, store);
+			this.fetchScores(results, store);
 		} catch (Exception e) {
 			System.err.println("Some error occured while getting the judgements for the job " + id + ": " + e.getMessage());
 
-			return null;
+			return false;
+		} finally {
+			if (store != null) {
+				store.close();
+			}
+		}
+		
+		this.writeReport(out, results);
+		
+		return true;
+	}
+
+	/**
+	 * Same as {@link JobsCF#processResults(java.io.Writer)}, but reading the
+	 * results from the local store of the job, written the last time they 
+	 * were retrieved, without connecting to the server.
+	 *
+	 * @param out Where the html graph is written. It's flushed but not closed.
+	 * @throws IOException If there is no store for the job or the graph
+	 * can't be written
+	 */
+	public void processStoredResults(Writer out) throws IOException {
+		JudgmentStore store = this.openStore(false);
+		JobResults results = null;
+		CSVWriter csv = this.openCSV();
+
+		try {
+			results = new JobResults(store.getServices(), this.pairwiseKappa);
+			
+			for (String unitId : store.getUnitIds()) {
+				UnitJudgments unit = store.getUnit(unitId);
+				double[][] unitScores = store.getScores(unitId);
+				
+				if (unit != null) {
+					results.addUnit(unit);
+					this.writeCSVLine(csv, unit);
+				}
+				if (unitScores != null) {
+					results.addScores(unitScores[0], unitScores[1]);
+				}
+			}
+		} finally {
+			csv.close();
+			store.close();
+		}
+		
+		this.logger.info("Results of {} units of job {} read from the store", store.getUnitIds().size(), this.getParameter("id"));
+		this.writeReport(out, results);
+	}
+
+	/**
+	 * Writes the graph of the results.
+	 */
+	private void writeReport(Writer out, JobResults results) throws IOException {
+		ReportGenerator generator;
+		if (this.offlineReport) {
+			generator = new SVGReportGenerator(out);
+		} else {
+			generator = new HTMLGenerator(out, this.reportDataDir);
+		}
+		
+		if (this.pairwiseKappa) {
+			generator.generateKappaTable(results.getRaters(), this.kappaTopPairs, this.kappaMinJudgments, this.kappaPageSize);
+			generator.generateKappaAverageCharts(results.getRaters());
 		}
+		generator.generateAgreementCharts(results.getAgreement());
+		generator.generateScoreCharts(results.getScores());
+		generator.finish();
+	}
+
+	/**
+	 * Opens the local store of the results of the job.
+	 *
+	 * @param create Whether it's created if it doesn't exist
+	 * @return The store, or null if the store is disabled
+	 * @throws IOException If the store can't be opened
+	 */
+	private JudgmentStore openStore(boolean create) throws IOException {
+		if (this.storeDir == null) {
+			if (create) {
+				return null;
+			}
+			
+			throw new IOException("The judgments store is disabled (JudgmentStoreDirectory)");
+		}
+		
+		File path = new File(this.storeDir, "job_" + this.getParameter("id") + ".store");
 		
-		HTMLGenerator generator = HTMLGenerator.getGenerator();
-		generator.generateKappaTable(raters);
-		generator.generateKappaAverageCharts(raters);
-		generator.generateScoreCharts(judgmentsJSON, this.services);
+		if (create) {
+			return JudgmentStore.open(path, this.getParameter("id"), this.getServiceNames());
+		}
 		
-		return generator.toString();
+		return JudgmentStore.open(path);
 	}
 
 	@Override
 	public JSONParams create() throws IOException {
 		JSONParams p = super.create();
 
-		this.addParameter("id", p.getProperty("id"));
+		this.addParameter("id", p.getProperty(ID));
 
 		return p;
 	}
 
 	/**
-	 * Populates the, previously created, job with the data passed to it.
+	 * Looks for the journal of an interrupted population of the same files.
+	 * If it exists, the job id is taken from it, so the job doesn't have to 
+	 * be created again and {@link JobsCF#populate()} resumes the population.
+	 * 
+	 * @return Whether an interrupted population was found
+	 * @throws IOException 
+	 */
+	public boolean resume() throws IOException {
+		PopulationJournal journal = new PopulationJournal(this.journalPath);
+		
+		if (journal.load() && journal.matches(this.pathLO, this.pathTR, this.pathGold)) {
+			this.addParameter("id", journal.getJobId());
+			
+			return true;
+		}
+		
+		return false;
+	}
+
+	/**
+	 * Populates the, previously created, job with the units passed to it.
+	 * The units are streamed to the server.
 	 *
-	 * @param data Data to populate the job, in JSON format.
+	 * @param units Units to populate the job, in JSON format.
 	 * @param id The job id to be populated.
 	 * @throws IOException
 	 */
-	private void populate(String data, String id) throws IOException {
+	private void populate(final List<String> units, String id) throws IOException {
 		ArrayList<String> paths2 = (ArrayList<String>) this.paths.clone();
 		paths2.add(id);
 		paths2.add("upload");
@@ -200,27 +476,119 @@ public class JobsCF extends CFHelper {
 		Map<String, String> query2 = (HashMap<String, String>)this.queryParams.clone();
 		query2.put("force", "true");
 
-		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, query2);
+		final WebResource wr = ConnectionHelper.getStreamingResource(this.baseUrl, paths2, this.type, query2);
+		final StreamingOutput body = new StreamingOutput() {
 
-		String ret = wr.type(MediaType.APPLICATION_JSON).post(String.class, data);
+			@Override
+			public void write(OutputStream output) throws IOException {
+				Writer w = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+				
+				for (String unit : units) {
+					w.write(unit);
+					w.write("\n");
+				}
+				
+				w.flush();
+			}
+		};
+
+		String ret = this.request(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return wr.type(MediaType.APPLICATION_JSON).post(String.class, body);
+			}
+		}, false);
 	}
 
 	/**
-	 * Interface for the {@link JobsCF#populate(java.lang.String, java.lang.String)}
-	 * using the id of the job already stored in the {@link JSONParams} object
-	 * of the class.
+	 * Populates the job whose id is already stored in the {@link JSONParams} 
+	 * object of the class with the gold and the data units, in chunks of
+	 * units. Every chunk is recorded in a {@link PopulationJournal} so an 
+	 * interrupted population can be resumed (see {@link JobsCF#resume()}).
 	 *
 	 * @throws IOException
 	 */
 	public void populate() throws IOException {
-		this.populate(createGoldDataJSON(), this.getParameter("id"));
-		this.populate(createDataJSON(), this.getParameter("id"));
-		this.markGoldStandars();
+		String id = this.getParameter("id");
+		PopulationJournal journal = new PopulationJournal(this.journalPath);
+		
+		if (journal.load() && id.equals(journal.getJobId()) 
+				&& journal.matches(this.pathLO, this.pathTR, this.pathGold)) {
+			journal.resume();
+			this.logger.info("Resuming the population of job {}", id);
+		} else {
+			journal.start(id, this.pathLO, this.pathTR, this.pathGold);
+		}
+		
+		try {
+			this.populate(new GoldUnitReader(), "gold", journal);
+			unit_count = this.populate(new DataUnitReader(), "data", journal);
+			this.markGoldStandars();
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		} catch (RuntimeException e) {
+			journal.close();
+			throw e;
+		}
+		
+		journal.finish();
+	}
+	
+	/**
+	 * Uploads all the units of a reader, chunk by chunk, skipping the chunks
+	 * already uploaded according to the journal.
+	 * 
+	 * @param reader Reader of the units
+	 * @param kind Kind of units (gold or data) for the journal
+	 * @param journal The journal of the population
+	 * @return The number of units of the job
+	 * @throws IOException 
+	 */
+	private int populate(UnitReader reader, String kind, PopulationJournal journal) throws IOException {
+		String id = this.getParameter("id");
+		int count = 0;
+		
+		try {
+			for (int chunk = 0; ; chunk++) {
+				if (journal.isCommitted(kind, chunk)) {
+					reader.skip(this.chunkSize);
+					count += journal.getCommittedCount(kind, chunk);
+					
+					continue;
+				}
+				
+				List<String> units = journal.getPendingUnits(kind, chunk);
+				
+				if (units != null) {
+					reader.skip(this.chunkSize);
+				} else {
+					units = reader.read(this.chunkSize);
+					
+					if (units.isEmpty()) {
+						break;
+					}
+					
+					journal.addUnits(kind, chunk, units);
+				}
+				
+				this.populate(units, id);
+				journal.commit(kind, chunk, units.size());
+				count += units.size();
+				
+				this.logger.info("Uploaded {} {} units of job " + id, count, kind);
+			}
+		} finally {
+			reader.close();
+		}
+		
+		return count;
 	}
 	
 	/**
 	 * Marks the uploaded gold data 
-	 * ( created with {@link JobsCF#createGoldDataJSON()} ) 
+	 * ( read with {@link GoldUnitReader} ) 
 	 * as gold in the 
 	 * CrowdFlower server.
 	 * 
@@ -231,111 +599,200 @@ public class JobsCF extends CFHelper {
 		paths2.add(this.getParameter("id"));
 		paths2.add("gold");
 		
-		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
-		String ret = wr.put(String.class, "");
-	}
+		final WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
+		
+		//Marking the gold again changes nothing, so it's retried as a GET
+		String ret = this.request(new Callable<String>() {
 
+			@Override
+			public String call() {
+				return wr.put(String.class, "");
+			}
+		}, true);
+	}
+	
 	/**
-	 * Creates the gold data to be uploaded in JSON format
-	 * 
-	 * @return String containing the gold data
-	 * @throws IOException 
+	 * Source of the units uploaded to the job.
 	 */
-	private String createGoldDataJSON() throws IOException {
-		JSONParams param = new JSONParams();
-		String json = "";
+	private interface UnitReader {
+		
+		/**
+		 * Reads the next units.
+		 * 
+		 * @param n Maximum number of units
+		 * @return The units in JSON format, less than n at the end
+		 */
+		List<String> read(int n) throws IOException;
 		
-		Integer nservices = this.services.length;
-		Random r = new Random(new Date().getTime());
+		/**
+		 * Skips units already uploaded, without generating them.
+		 * 
+		 * @param n Number of units
+		 */
+		void skip(int n) throws IOException;
 		
-		FileInputStream fis = new FileInputStream(this.pathGold);
-		DataInputStream dis = new DataInputStream(fis);
+		void close() throws IOException;
+	}
 
-		BufferedReader br1 = new BufferedReader(new InputStreamReader(dis));
+	/**
+	 * Reads the gold data to be uploaded, in JSON format
+	 */
+	private class GoldUnitReader implements UnitReader {
 		
-		while (true) {
-			String lo = br1.readLine();
-			String tr;
-			String tr2;
-			
-			if (lo == null)
-				break;
-			
-			tr = br1.readLine();
-			tr2 = br1.readLine();
-			
-			param.addProperty("lo", lo);
-			param.addProperty("tr", tr);
-			
-			int correct_position = r.nextInt(nservices);
+		private BufferedReader br1;
+		private Random r = new Random(new Date().getTime());
+
+		public GoldUnitReader() throws IOException {
+			FileInputStream fis = new FileInputStream(pathGold);
+			DataInputStream dis = new DataInputStream(fis);
+
+			this.br1 = new BufferedReader(new InputStreamReader(dis));
+		}
+		
+		@Override
+		public List<String> read(int n) throws IOException {
+			List<String> units = new ArrayList<String>();
+			int nservices = services.length;
 			
-			for (int i = 0; i < nservices; i++) {
-				if (i == correct_position) {
-					param.addProperty(this.services[i].getName(), tr2);
-					param.addProperty("fluency_" + this.services[i].getName() + "_gold", "5");
-					param.addProperty("fluency_" + this.services[i].getName() + "_gold_reason", "Some reason");
-					param.addProperty("adequacy_" + this.services[i].getName() + "_gold", "5");
-					param.addProperty("adequacy_" + this.services[i].getName() + "_gold_reason", "Some reason");
-				} else {
-					param.addProperty(this.services[i].getName(), this.shuffler.shuffle(tr2));
-					param.addProperty("fluency_" + this.services[i].getName() + "_gold", "1");
-					param.addProperty("fluency_" + this.services[i].getName() + "_gold_reason", "Some reason");
-					param.addProperty("adequacy_" + this.services[i].getName() + "_gold", "1");
-					param.addProperty("adequacy_" + this.services[i].getName() + "_gold_reason", "Some reason");
+			while (units.size() < n) {
+				String lo = br1.readLine();
+				String tr;
+				String tr2;
+
+				if (lo == null)
+					break;
+
+				tr = br1.readLine();
+				tr2 = br1.readLine();
+
+				StringWriter unit = new StringWriter();
+				JsonGenerator g = jsonFactory.createJsonGenerator(unit);
+				
+				g.writeStartObject();
+				g.writeStringField("lo", lo);
+				g.writeStringField("tr", tr);
+
+				int correct_position = r.nextInt(nservices);
+
+				for (int i = 0; i < nservices; i++) {
+					String name = services[i].getName();
 					
+					if (i == correct_position) {
+						g.writeStringField(name, tr2);
+						g.writeStringField("fluency_" + name + "_gold", "5");
+						g.writeStringField("fluency_" + name + "_gold_reason", "Some reason");
+						g.writeStringField("adequacy_" + name + "_gold", "5");
+						g.writeStringField("adequacy_" + name + "_gold_reason", "Some reason");
+					} else {
+						g.writeStringField(name, shuffler.shuffle(tr2));
+						g.writeStringField("fluency_" + name + "_gold", "1");
+						g.writeStringField("fluency_" + name + "_gold_reason", "Some reason");
+						g.writeStringField("adequacy_" + name + "_gold", "1");
+						g.writeStringField("adequacy_" + name + "_gold_reason", "Some reason");
+					}
 				}
+				g.writeStringField("_golden", "TRUE");
+				g.writeEndObject();
+				g.close();
+				
+				units.add(unit.toString());
 			}
-			param.addProperty("_golden", "TRUE");
 			
-			json += "\n" + param.toString();
-			param = new JSONParams();
+			return units;
+		}
+
+		@Override
+		public void skip(int n) throws IOException {
+			for (int i = 0; i < 3 * n && br1.readLine() != null; i++);
+		}
+
+		@Override
+		public void close() throws IOException {
+			br1.close();
 		}
-		
-		return json;
 	}
 	
 	/**
-	 * Creates the job data to be uploaded in JSON format
-	 * 
-	 * @return String containing the job data
-	 * @throws IOException 
+	 * Reads the job data to be uploaded, in JSON format, translating the
+	 * sentences with the services concurrently.
 	 */
-	private String createDataJSON() throws IOException {
-		JSONParams param = new JSONParams();
-		unit_count = 0;
-
-		String json = "";
-
-		FileInputStream fis = new FileInputStream(this.pathLO);
-		DataInputStream dis = new DataInputStream(fis);
-
-		BufferedReader br1 = new BufferedReader(new InputStreamReader(dis));
-
-
-		FileInputStream fis2 = new FileInputStream(this.pathTR);
-		DataInputStream dis2 = new DataInputStream(fis2);
-
-		BufferedReader br2 = new BufferedReader(new InputStreamReader(dis2));
+	private class DataUnitReader implements UnitReader {
+		
+		private BufferedReader br1;
+		private BufferedReader br2;
+		private TranslationPool pool;
 
-		String line1, line2;
+		public DataUnitReader() throws IOException {
+			FileInputStream fis = new FileInputStream(pathLO);
+			DataInputStream dis = new DataInputStream(fis);
 
-		while ((line1 = br1.readLine()) != null && (line2 = br2.readLine()) != null) {
-			param = new JSONParams();
+			this.br1 = new BufferedReader(new InputStreamReader(dis));
 
-			param.addProperty("lo", line1);
-			param.addProperty("tr", line2);
+			FileInputStream fis2 = new FileInputStream(pathTR);
+			DataInputStream dis2 = new DataInputStream(fis2);
 
-			for (Service c : this.services) {
-				param.addProperty(c.getName(), c.getTranslation(line1, this.LO, this.LM));
+			this.br2 = new BufferedReader(new InputStreamReader(dis2));
+			
+			this.pool = new TranslationPool(services, translationThreads);
+		}
+		
+		@Override
+		public List<String> read(int n) throws IOException {
+			ArrayList<String> lines1 = new ArrayList<String>(n);
+			ArrayList<String> lines2 = new ArrayList<String>(n);
+			String line1, line2;
+			
+			while (lines1.size() < n 
+					&& (line1 = br1.readLine()) != null && (line2 = br2.readLine()) != null) {
+				lines1.add(line1);
+				lines2.add(line2);
 			}
+			
+			String[][] translations = pool.translate(lines1, LO, LM);
+			List<String> units = new ArrayList<String>(lines1.size());
+			
+			for (int i = 0; i < lines1.size(); i++) {
+				StringWriter unit = new StringWriter();
+				JsonGenerator g = jsonFactory.createJsonGenerator(unit);
+				
+				g.writeStartObject();
+				g.writeStringField("lo", lines1.get(i));
+				g.writeStringField("tr", lines2.get(i));
 
-			json += "\n" + param.toString();
+				for (int j = 0; j < services.length; j++) {
+					g.writeStringField(services[j].getName(), translations[i][j]);
+				}
 
-			unit_count++;
+				g.writeEndObject();
+				g.close();
+				
+				units.add(unit.toString());
+			}
+			
+			if (translationCache != null) {
+				translationCache.flush();
+			}
+			
+			return units;
 		}
 
+		@Override
+		public void skip(int n) throws IOException {
+			for (int i = 0; i < n && br1.readLine() != null && br2.readLine() != null; i++);
+		}
 
-		return json;
+		@Override
+		public void close() throws IOException {
+			pool.shutdown();
+			br1.close();
+			br2.close();
+			
+			if (translationCache != null) {
+				translationCache.close();
+				logger.info("Translation cache: {} hits, {} misses", 
+						translationCache.getHits(), translationCache.getMisses());
+			}
+		}
 	}
 
 	/**
@@ -348,7 +805,13 @@ public class JobsCF extends CFHelper {
 	private boolean isFinished(String id) throws IOException {
 		JSONParams response = this.getInfo(id);
 
-		String status = response.getProperty("state");
+		String status = response.getProperty(STATE);
+		
+		try {
+			this.expectedJudgments = response.getInt(UNITS_COUNT) * response.getInt(JUDGMENTS_PER_UNIT);
+		} catch (NumberFormatException e) {
+			this.expectedJudgments = 0;
+		}
 
 		return status != null && status.equals("finished");
 	}
@@ -379,13 +842,40 @@ public class JobsCF extends CFHelper {
 	 * @throws IOException
 	 * @throws ParameterNeeded If the id of the job is missing
 	 */
-	public HashMap<String, HashMap<String, KappaRaters>> getRatersJudgements() throws IOException, ParameterNeeded {
-		//Initialization of all hashes based on service's name
-		HashMap<String, HashMap<String, KappaRaters>> ratersHash = new HashMap<String, HashMap<String, KappaRaters>>();
-		for(Service s: services) {
-			ratersHash.put(s.getName(), new HashMap<String, KappaRaters>());
-		}
+	public HashMap<String, RaterPairMap> getRatersJudgements() throws IOException, ParameterNeeded {
+		return this.getRatersJudgements(new HashMap<String, MultiRaterAgreement>());
+	}
+	
+	/**
+	 * Same as {@link JobsCF#getRatersJudgements()}, also measuring the 
+	 * agreement among all the raters of each service.
+	 * 
+	 * @param agreement An already created hash, populated with the agreement
+	 * of each service. See {@link MultiRaterAgreement}
+	 * @return The results in the form of a Hash of services containing the every pair of raters and the 
+	 * info about the rates given by them. See {@link KappaRaters}
+	 * @throws IOException
+	 * @throws ParameterNeeded If the id of the job is missing
+	 */
+	public HashMap<String, RaterPairMap> getRatersJudgements(HashMap<String, MultiRaterAgreement> agreement) throws IOException, ParameterNeeded {
+		JobResults results = new JobResults(this.getServiceNames(), this.pairwiseKappa);
+		
+		this.fetchUnits(results, null);
+		agreement.putAll(results.getAgreement());
 		
+		return results.getRaters();
+	}
+	
+	/**
+	 * Retrieves the judgments of every unit, adding them to the results and
+	 * writing them to the csv file and to the store.
+	 * 
+	 * @param results The results where the units are added
+	 * @param store The store of the job, null if it isn't used
+	 * @throws IOException
+	 * @throws ParameterNeeded If the id of the job is missing
+	 */
+	private void fetchUnits(final JobResults results, final JudgmentStore store) throws IOException, ParameterNeeded {
 		ArrayList<String> paths2 = (ArrayList<String>) this.paths.clone();
 
 		String id = null;
@@ -398,28 +888,199 @@ public class JobsCF extends CFHelper {
 		
 		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
 
-		String response = wr.get(String.class);
-		JSONParams unitsJson = new JSONParams(response);
+		InputStream response = this.get(wr, InputStream.class);
+		Iterator<String> unitsIds = JSONStreamReader.readKeys(response).iterator();
 		
-		Iterator<String> unitsIds = unitsJson.getKeySet();
+		final CSVWriter csv = this.openCSV();
 		
-		FileWriter fw = new FileWriter("results.csv");
-		BufferedWriter bw = new BufferedWriter(fw);
+		try {
+			this.fetchUnits(unitsIds, new UnitHandler() {
+
+				@Override
+				public void unit(String unitId, UnitJudgments unit) throws IOException {
+					results.addUnit(unit);
+					writeCSVLine(csv, unit);
+
+					//Only changed judgments make the store grow
+					if (store != null) {
+						store.putUnit(unitId, unit);
+					}
+				}
+			});
+		} finally {
+			csv.close();
+		}
 		
-		while(unitsIds.hasNext()) {
-			String unitId = unitsIds.next();
+		this.logger.info("Results written to {} file", this.resultsFile);
+	}
+	
+	/**
+	 * Receives the units fetched by 
+	 * {@link JobsCF#fetchUnits(java.util.Iterator, es.ua.alex952.cf_helpers.JobsCF.UnitHandler)}.
+	 */
+	private interface UnitHandler {
+		
+		void unit(String unitId, UnitJudgments unit) throws IOException;
+	}
+	
+	/**
+	 * Retrieves the judgments of some units of the job.
+	 * 
+	 * @param unitsIds The ids of the units
+	 * @param handler Receives every unit, in the order of the ids
+	 * @throws IOException 
+	 */
+	private void fetchUnits(Iterator<String> unitsIds, UnitHandler handler) throws IOException {
+		//Units are fetched concurrently, but they are consumed in the order
+		//of the ids, so the results are only touched from this thread and
+		//the csv file is always written in the same order
+		ExecutorService executor = Executors.newFixedThreadPool(this.fetchThreads);
+		LinkedList<Future<JSONParams>> fetching = new LinkedList<Future<JSONParams>>();
+		LinkedList<String> fetchingIds = new LinkedList<String>();
+		int window = this.fetchThreads * 4;
+		UnitJudgments.Decoder decoder = new UnitJudgments.Decoder(this.getServiceNames());
+		
+		try {
+			while(unitsIds.hasNext() || !fetching.isEmpty()) {
+				while (unitsIds.hasNext() && fetching.size() < window) {
+					final String unitId = unitsIds.next();
+					
+					fetchingIds.add(unitId);
+					fetching.add(executor.submit(new Callable<JSONParams>() {
+
+						@Override
+						public JSONParams call() throws Exception {
+							return getUnit(unitId);
+						}
+					}));
+				}
+				
+				String unitId = fetchingIds.removeFirst();
+				
+				handler.unit(unitId, decoder.decode(this.waitFor(fetching.removeFirst())));
+			}
+		} finally {
+			for (Future<JSONParams> f : fetching) {
+				f.cancel(true);
+			}
 			
-			populateRaters(unitId, ratersHash, bw);
-			bw.newLine();
+			executor.shutdownNow();
 		}
+	}
+	
+	/**
+	 * Opens the csv file of the results.
+	 */
+	private CSVWriter openCSV() throws IOException {
+		return new CSVWriter(new OutputStreamWriter(new FileOutputStream(this.resultsFile), this.resultsEncoding));
+	}
+	
+	/**
+	 * Waits for a unit being fetched.
+	 * 
+	 * @param unit The unit being fetched
+	 * @return The complete unit
+	 * @throws IOException If the unit couldn't be fetched
+	 */
+	private JSONParams waitFor(Future<JSONParams> unit) throws IOException {
+		try {
+			return unit.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching the units");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			
+			throw new IOException("Error fetching a unit: " + e.getCause().getMessage());
+		}
+	}
+	
+	/**
+	 * Retrieves one unit of the job, with all its judgments.
+	 * 
+	 * @param unitId The id of the unit
+	 * @return The complete unit
+	 * @throws IOException 
+	 */
+	private JSONParams getUnit(String unitId) throws IOException {
+		ArrayList<String> paths2 = (ArrayList<String>) this.paths.clone();
+		paths2.add(this.getParameter("id"));
+		paths2.add("units");
+		paths2.add(unitId);
+		
+		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
+
+		InputStream response = this.get(wr, InputStream.class);
 		
-		bw.close();
-		this.logger.info("Results written to results.csv file");
+		try {
+			return new JSONParams(response);
+		} finally {
+			response.close();
+		}
+	}
+	
+	/**
+	 * Retrieves the aggregated judgments of every unit and averages the 
+	 * scores of each service. The response is read unit by unit.
+	 * 
+	 * @return The average scores. See {@link ScoreAggregator}
+	 * @throws ParameterNeeded If the id of the job is missing
+	 * @throws IOException 
+	 */
+	public ScoreAggregator getScores() throws ParameterNeeded, IOException {
+		JobResults results = new JobResults(this.getServiceNames(), false);
 		
-		return ratersHash;
+		this.fetchScores(results, null);
+		
+		return results.getScores();
+	}
+	
+	/**
+	 * Retrieves the aggregated judgments of every unit, adding the average 
+	 * scores to the results and to the store.
+	 * 
+	 * @param results The results where the scores are added
+	 * @param store The store of the job, null if it isn't used
+	 * @throws ParameterNeeded If the id of the job is missing
+	 * @throws IOException 
+	 */
+	private void fetchScores(final JobResults results, final JudgmentStore store) throws ParameterNeeded, IOException {
+		JSONStreamReader.readFields(this.getJudgments(), new JSONStreamReader.FieldHandler() {
+
+			@Override
+			public void field(String unitId, JSONParams value) throws IOException {
+				double[][] unitScores = results.getScores().decode(value);
+				
+				results.addScores(unitScores[0], unitScores[1]);
+				
+				//Only changed scores make the store grow
+				if (store != null && !sameScores(store.getScores(unitId), unitScores)) {
+					store.putScores(unitId, unitScores[0], unitScores[1]);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Whether the scores of a unit are the same as the stored ones.
+	 * 
+	 * @param stored The stored scores, null if there are none
+	 * @param scores The fluency and adequacy of each service
+	 */
+	private static boolean sameScores(double[][] stored, double[][] scores) {
+		return stored != null && Arrays.equals(stored[0], scores[0]) && Arrays.equals(stored[1], scores[1]);
 	}
 	
-	public JSONParams getJudgments() throws ParameterNeeded, IOException {
+	/**
+	 * Requests the aggregated judgments of every unit of the job.
+	 * 
+	 * @return The response, an object with a field for each unit
+	 * @throws ParameterNeeded If the id of the job is missing
+	 * @throws IOException If the request failed
+	 */
+	private InputStream getJudgments() throws ParameterNeeded, IOException {
 		ArrayList<String> paths2 = (ArrayList<String>) this.paths.clone();
 
 		String id = null;
@@ -432,133 +1093,303 @@ public class JobsCF extends CFHelper {
 		
 		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
 		
-		String response = wr.get(String.class);
-		JSONParams judgmentsJSON = new JSONParams(response);
-		
-		return judgmentsJSON;
+		return this.get(wr, InputStream.class);
 	}
 	
 	/**
-	 * Used to populate Hashmap with pairs of raters from the
-	 * unit's judgments and writes the unit to a csv file.
+	 * Brings the results of the job up to date, retrieving only the units
+	 * that got new judgments since the last call. Meant to be called 
+	 * periodically while the job is running, so when it finishes the 
+	 * results are already collected.
 	 * 
-	 * @param unitId The id of the unit that is been analyzed
-	 * @param raters An already created hashmap to be populated
-	 * @param bos FileWriter with witch to write the unit to the csv file
-	 * @throws IOException 
+	 * The aggregated judgments of the job are read on every call, and a unit
+	 * is retrieved again only if its aggregated entry changed. Its previous 
+	 * judgments are then taken out of the results before adding the new ones.
+	 * 
+	 * The results are only locked while the retrieved units are added, so 
+	 * the graph of the results collected so far can be written while 
+	 * polling. Replacing a unit is idempotent, so overlapping calls don't
+	 * count any unit twice.
+	 * 
+	 * @return The number of units updated
+	 * @throws IOException
+	 * @throws ParameterNeeded If the id of the job is missing
 	 */
-	private void populateRaters(String unitId, HashMap<String, HashMap<String, KappaRaters>> raters, BufferedWriter bw) throws IOException {
-		ArrayList<String> paths2 = (ArrayList<String>) this.paths.clone();
-		paths2.add(this.getParameter("id"));
-		paths2.add("units");
-		paths2.add(unitId);
+	public int poll() throws IOException, ParameterNeeded {
+		final JobResults results;
+		final HashMap<String, byte[]> seen;
+		final JudgmentStore store;
 		
-		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type, this.queryParams);
+		synchronized (this) {
+			if (this.polled == null) {
+				this.polled = new JobResults(this.getServiceNames(), this.pairwiseKappa);
+				this.polledUnits = new LinkedHashMap<String, UnitJudgments>();
+				this.polledScores = new HashMap<String, double[][]>();
+				this.polledEntries = new HashMap<String, byte[]>();
+				this.pollStore = this.openStore(true);
+			}
+			
+			results = this.polled;
+			seen = this.polledEntries;
+			store = this.pollStore;
+		}
+		
+		final ArrayList<String> changed = new ArrayList<String>();
+		final ArrayList<byte[]> entries = new ArrayList<byte[]>();
+		final ArrayList<double[][]> scores = new ArrayList<double[][]>();
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//Every JVM has to provide it
+			throw new IllegalStateException(e);
+		}
+		
+		JSONStreamReader.readFields(this.getJudgments(), new JSONStreamReader.FieldHandler() {
 
-		String response = wr.get(String.class);
-		JSONParams completeUnit = new JSONParams(response);
-		JSONParams judgments = completeUnit.getObject("results").getObject("judgments");
+			@Override
+			public void field(String unitId, JSONParams value) throws IOException {
+				byte[] entry = digest.digest(value.toString().getBytes("UTF-8"));
+				byte[] known;
+				
+				synchronized (JobsCF.this) {
+					known = seen.get(unitId);
+				}
+				
+				if (!Arrays.equals(entry, known)) {
+					changed.add(unitId);
+					entries.add(entry);
+					scores.add(results.getScores().decode(value));
+				}
+			}
+		});
 		
-		JSONParams judgmentA = null;
-		JSONParams judgmentB = null;
+		final ArrayList<UnitJudgments> units = new ArrayList<UnitJudgments>(changed.size());
 		
-		for(int i = 0; i < judgments.size(); i++) {
-			judgmentA = judgments.getObjectAt(i);
+		this.fetchUnits(changed.iterator(), new UnitHandler() {
+
+			@Override
+			public void unit(String unitId, UnitJudgments unit) throws IOException {
+				units.add(unit);
+				
+				if (store != null) {
+					store.putUnit(unitId, unit);
+				}
+			}
+		});
+		
+		synchronized (this) {
+			//The results were written and released meanwhile
+			if (this.polled != results) {
+				return 0;
+			}
 			
-			for(int j = 0; j < judgments.size(); j++) {
-				if (i != j) {
-					judgmentB = judgments.getObjectAt(j);
-					
-					int workerA = Integer.parseInt(judgmentA.getProperty("worker_id"));
-					int workerB = Integer.parseInt(judgmentB.getProperty("worker_id"));
-					
-					int leftWorker = Math.min(workerA, workerB);
-					int rightWorker = Math.max(workerA, workerB);
-					
-					for (int k = 0; k < services.length; k++) {
-						Service s = services[k];
-						
-						HashMap<String, KappaRaters> ratersService = raters.get(s.getName());
-						KappaRaters kr = null;
-
-						if (ratersService.containsKey(leftWorker + "/" + rightWorker)) {
-							kr = ratersService.get(leftWorker + "/" + rightWorker);
-						} else {
-							kr = new KappaRaters(workerA, workerB);
-							ratersService.put(leftWorker + "/" + rightWorker, kr);
-						}
-						
-						kr.addAdequacy(
-								Integer.parseInt(judgmentA.getObject("data").getProperty("adequacy_" + s.getName())), 
-								Integer.parseInt(judgmentB.getObject("data").getProperty("adequacy_" + s.getName())));
-						
-						kr.addFluency(
-								Integer.parseInt(judgmentA.getObject("data").getProperty("fluency_" + s.getName())), 
-								Integer.parseInt(judgmentB.getObject("data").getProperty("fluency_" + s.getName())));
-					}
-					
+			//The entries are only taken as seen once their units are added,
+			//so the units are retrieved again if this poll fails halfway
+			for (int i = 0; i < changed.size(); i++) {
+				String unitId = changed.get(i);
+				UnitJudgments unit = units.get(i);
+				UnitJudgments previous = this.polledUnits.put(unitId, unit);
+
+				if (previous != null) {
+					results.removeUnit(previous);
+					this.polledJudgments -= previous.size();
 				}
+				results.addUnit(unit);
+				this.polledJudgments += unit.size();
+				
+				double[][] unitScores = scores.get(i);
+				double[][] previousScores = this.polledScores.put(unitId, unitScores);
+
+				if (previousScores != null) {
+					results.removeScores(previousScores[0], previousScores[1]);
+				}
+				results.addScores(unitScores[0], unitScores[1]);
+				seen.put(unitId, entries.get(i));
 			}
 		}
 		
-		writeCSVLine(bw, completeUnit);
+		if (store != null) {
+			for (int i = 0; i < changed.size(); i++) {
+				double[][] unitScores = scores.get(i);
+				
+				if (!sameScores(store.getScores(changed.get(i)), unitScores)) {
+					store.putScores(changed.get(i), unitScores[0], unitScores[1]);
+				}
+			}
+			store.sync();
+		}
+		
+		return changed.size();
 	}
 	
 	/**
-	 * Writes a line of wokers judgments to a csv file
+	 * Writes the html graph of the results collected so far by 
+	 * {@link JobsCF#poll()}, while the job is still running.
 	 * 
-	 * @param object The complete unit being written
-	 * @throws IOException
+	 * @param out Where the html graph is written. It's flushed but not closed.
+	 * @throws IOException If the graph can't be written
+	 */
+	public synchronized void writePolledReport(Writer out) throws IOException {
+		if (this.polled == null) {
+			throw new IOException("The results of the job haven't been polled yet");
+		}
+		
+		this.writeReport(out, this.polled);
+	}
+	
+	/**
+	 * Writes the results collected by {@link JobsCF#poll()} once the job has
+	 * finished: the csv file and the html graph. The polling state is 
+	 * released, so the next poll starts over.
+	 * 
+	 * @param out Where the html graph is written. It's flushed but not closed.
+	 * @throws IOException If the results can't be written
 	 */
-	private void writeCSVLine(BufferedWriter bw, JSONParams object) throws IOException {
-		ArrayList<String> fields = new ArrayList<String>();	
+	public synchronized void processPolledResults(Writer out) throws IOException {
+		if (this.polled == null) {
+			throw new IOException("The results of the job haven't been polled yet");
+		}
 		
-		String lo = object.getObject("results").getObject("judgments").getObjectAt(0).getObject("unit_data").getProperty("lo");
-		fields.add(lo);
+		CSVWriter csv = this.openCSV();
 		
-		for (int i = 0; i < services.length; i++) {
-			String translation = object.getObject("results").getObject("judgments").getObjectAt(0).getObject("unit_data").getProperty(services[i].getName());
-			
-			fields.add(translation);
+		try {
+			for (UnitJudgments unit : this.polledUnits.values()) {
+				this.writeCSVLine(csv, unit);
+			}
+		} finally {
+			csv.close();
 		}
 		
-		JSONParams judgments = object.getObject("results").getObject("judgments");
-		JSONParams judgment = null;
+		this.logger.info("Results written to {} file", this.resultsFile);
+		this.writeReport(out, this.polled);
+		
+		if (this.pollStore != null) {
+			this.pollStore.close();
+		}
+		this.polled = null;
+		this.polledUnits = null;
+		this.polledScores = null;
+		this.polledEntries = null;
+		this.pollStore = null;
+		this.polledJudgments = 0;
+	}
+	
+	/**
+	 * Number of judgments collected by {@link JobsCF#poll()}.
+	 * 
+	 * @return The judgments of the units polled so far
+	 */
+	public synchronized int getPolledJudgments() {
+		return this.polledJudgments;
+	}
+	
+	/**
+	 * Number of judgments the job will have when it finishes, read on the 
+	 * last call to {@link JobsCF#isFinished()}.
+	 * 
+	 * @return The expected judgments, 0 if unknown
+	 */
+	public int getExpectedJudgments() {
+		return this.expectedJudgments;
+	}
+	
+	/**
+	 * Appends a suffix to the names of the files written with the results
+	 * (the csv file and the data directory of the graph), so the results of
+	 * many jobs can be written to the same directory.
+	 * 
+	 * @param suffix The suffix, such as the id of the job
+	 */
+	public void setOutputSuffix(String suffix) {
+		int dot = this.resultsFile.lastIndexOf('.');
+		if (dot > this.resultsFile.lastIndexOf(File.separatorChar)) {
+			this.resultsFile = this.resultsFile.substring(0, dot) + "_" + suffix + this.resultsFile.substring(dot);
+		} else {
+			this.resultsFile = this.resultsFile + "_" + suffix;
+		}
 		
-		Integer judgmentsSize = judgments.size();
-		fields.add(judgmentsSize.toString());
+		if (this.reportDataDir != null) {
+			this.reportDataDir = new File(this.reportDataDir.getPath() + "_" + suffix);
+		}
+	}
+	
+	/**
+	 * Directory where the data of the graph's charts is written.
+	 * 
+	 * @return The directory, null if the data is inlined in the graph
+	 */
+	public File getReportDataDirectory() {
+		return reportDataDir;
+	}
+	
+	public void setReportDataDirectory(File reportDataDir) {
+		this.reportDataDir = reportDataDir;
+	}
+	
+	public long getPollMinInterval() {
+		return pollMinInterval;
+	}
+	
+	public long getPollMaxInterval() {
+		return pollMaxInterval;
+	}
+	
+	public int getDaemonThreads() {
+		return daemonThreads;
+	}
+	
+	/**
+	 * Names of the services, in the order of the services array.
+	 * 
+	 * @return The names
+	 */
+	private String[] getServiceNames() {
+		String[] names = new String[this.services.length];
 		
-		for(int i = 0; i < judgments.size(); i++) {
-			judgment = judgments.getObjectAt(i);
-			fields.add(judgment.getProperty("worker_id"));
-			
-			for (int k = 0; k < services.length; k++) {
-				Service s = services[k];
-				
-				fields.add("adequacy_" + s.getName());
-				fields.add(judgment.getObject("data").getProperty("adequacy_" + s.getName()));
-				fields.add("fluency_" + s.getName());
-				fields.add(judgment.getObject("data").getProperty("fluency_" + s.getName()));
-			}
+		for (int i = 0; i < names.length; i++) {
+			names[i] = this.services[i].getName();
 		}
 		
-		bw.write(this.implode(fields.toArray(new String[fields.size()]), ","));
+		return names;
 	}
 	
-	private String implode(String[] fields, String delim) {
-		String ret = "";
+	/**
+	 * Writes a line of wokers judgments to a csv file
+	 * 
+	 * @param csv The csv file
+	 * @param unit The judgments of the unit being written
+	 * @throws IOException
+	 */
+	private void writeCSVLine(CSVWriter csv, UnitJudgments unit) throws IOException {
+		String[] adequacyLabels = new String[services.length];
+		String[] fluencyLabels = new String[services.length];
 		
-		for (int i = 0; i < fields.length; i++) {
-			ret += fields[i].replaceAll("[^A-Za-záéíóú ,\\.0-9\\_]", "");
+		csv.field(unit.getLo());
+		
+		for (int k = 0; k < services.length; k++) {
+			csv.field(unit.getTranslation(k));
 			
-			if (i < fields.length - 1) {
-				ret += delim;
+			adequacyLabels[k] = "adequacy_" + services[k].getName();
+			fluencyLabels[k] = "fluency_" + services[k].getName();
+		}
+		
+		csv.field(unit.size());
+		
+		int[] workers = unit.getWorkers();
+		for(int i = 0; i < unit.size(); i++) {
+			csv.field(workers[i]);
+			
+			for (int k = 0; k < services.length; k++) {
+				csv.field(adequacyLabels[k]);
+				csv.field(unit.getAdequacy(k)[i]);
+				csv.field(fluencyLabels[k]);
+				csv.field(unit.getFluency(k)[i]);
 			}
 		}
 		
-		return ret;
+		csv.endRecord();
 	}
-	
 
 	/**
 	 * Orders a job with the units created for it
@@ -578,9 +1409,9 @@ public class JobsCF extends CFHelper {
 		paths2.add(id);
 		paths2.add("orders");
 
-		WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type);
+		final WebResource wr = ConnectionHelper.getResource(this.baseUrl, paths2, this.type);
 
-		Form f = new Form();
+		final Form f = new Form();
 
 		f.add("key", this.queryParams.get("key"));
 		f.add("debit[units_count]", unit_count);
@@ -589,7 +1420,13 @@ public class JobsCF extends CFHelper {
 			f.add("channels[0]", channel);
 		}
 
-		String response = wr.type("application/x-www-form-urlencoded").post(String.class, f);
+		String response = this.request(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return wr.type("application/x-www-form-urlencoded").post(String.class, f);
+			}
+		}, false);
 
 		return new JSONParams(response);
 	}
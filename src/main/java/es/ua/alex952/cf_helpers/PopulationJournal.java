@@ -0,0 +1,273 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Journal of the population of a job. It records the units of every chunk
+ * (with their translations) before the chunk is uploaded, and the chunks
+ * already uploaded, so an interrupted population can be resumed from the
+ * last uploaded chunk without creating the job or translating again.
+ *
+ * The journal is a text file with one record per line:
+ * <ul>
+ * <li>job, id, source file, reference file, gold file</li>
+ * <li>unit, kind, chunk, unit in JSON format</li>
+ * <li>commit, kind, chunk, number of units uploaded</li>
+ * </ul>
+ * The fields are separated by tabs.
+ *
+ * @author alex952
+ */
+public class PopulationJournal {
+
+	private static final String ENCODING = "UTF-8";
+
+	private File file;
+	private String jobId = null;
+	private String[] sources = null;
+
+	/**
+	 * Units written but not uploaded, by kind and chunk
+	 */
+	private HashMap<String, List<String>> pending = new HashMap<String, List<String>>();
+
+	/**
+	 * Units uploaded, by kind and chunk
+	 */
+	private HashMap<String, Integer> committed = new HashMap<String, Integer>();
+
+	private Writer writer = null;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param path Path of the journal file
+	 */
+	public PopulationJournal(String path) {
+		this.file = new File(path);
+	}
+
+	/**
+	 * Reads the journal file if it exists.
+	 *
+	 * @return Whether there was a journal of an interrupted population
+	 * @throws IOException
+	 */
+	public boolean load() throws IOException {
+		this.jobId = null;
+		this.pending.clear();
+		this.committed.clear();
+
+		if (!this.file.exists()) {
+			return false;
+		}
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), ENCODING));
+
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] fields = line.split("\t", 4);
+
+				if (fields[0].equals("job") && fields.length == 4) {
+					String[] paths = fields[3].split("\t");
+
+					this.jobId = fields[1];
+					this.sources = new String[] {fields[2], paths[0], paths.length > 1 ? paths[1] : ""};
+				} else if (fields[0].equals("unit") && fields.length == 4) {
+					String key = key(fields[1], Integer.parseInt(fields[2]));
+
+					if (!this.pending.containsKey(key)) {
+						this.pending.put(key, new ArrayList<String>());
+					}
+					this.pending.get(key).add(fields[3]);
+				} else if (fields[0].equals("commit") && fields.length == 4) {
+					String key = key(fields[1], Integer.parseInt(fields[2]));
+
+					this.pending.remove(key);
+					this.committed.put(key, Integer.parseInt(fields[3]));
+				}
+			}
+		} finally {
+			br.close();
+		}
+
+		return this.jobId != null;
+	}
+
+	/**
+	 * Id of the job of the journal, if any.
+	 *
+	 * @return The job id or null
+	 */
+	public String getJobId() {
+		return this.jobId;
+	}
+
+	/**
+	 * Checks that the journal belongs to a population of the same files.
+	 *
+	 * @param pathLO Source sentences file
+	 * @param pathTR Reference translations file
+	 * @param pathGold Gold standards file
+	 * @return Whether the files are the same
+	 */
+	public boolean matches(String pathLO, String pathTR, String pathGold) {
+		return this.sources != null
+				&& this.sources[0].equals(String.valueOf(pathLO))
+				&& this.sources[1].equals(String.valueOf(pathTR))
+				&& this.sources[2].equals(String.valueOf(pathGold));
+	}
+
+	/**
+	 * Starts a new journal for a job, discarding any previous one.
+	 *
+	 * @param id The job id
+	 * @param pathLO Source sentences file
+	 * @param pathTR Reference translations file
+	 * @param pathGold Gold standards file
+	 * @throws IOException
+	 */
+	public void start(String id, String pathLO, String pathTR, String pathGold) throws IOException {
+		this.close();
+		this.pending.clear();
+		this.committed.clear();
+		this.jobId = id;
+		this.sources = new String[] {String.valueOf(pathLO), String.valueOf(pathTR), String.valueOf(pathGold)};
+
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, false), ENCODING));
+		this.write("job\t" + id + "\t" + this.sources[0] + "\t" + this.sources[1] + "\t" + this.sources[2]);
+	}
+
+	/**
+	 * Checks if a chunk was already uploaded.
+	 *
+	 * @param kind Kind of units (gold or data)
+	 * @param chunk Chunk number
+	 * @return Whether the chunk was uploaded
+	 */
+	public boolean isCommitted(String kind, int chunk) {
+		return this.committed.containsKey(key(kind, chunk));
+	}
+
+	/**
+	 * Number of units uploaded in a chunk.
+	 *
+	 * @param kind Kind of units (gold or data)
+	 * @param chunk Chunk number
+	 * @return The number of units or 0 if the chunk wasn't uploaded
+	 */
+	public int getCommittedCount(String kind, int chunk) {
+		Integer count = this.committed.get(key(kind, chunk));
+
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Units of a chunk written to the journal but not uploaded.
+	 *
+	 * @param kind Kind of units (gold or data)
+	 * @param chunk Chunk number
+	 * @return The units in JSON format, or null if there are none
+	 */
+	public List<String> getPendingUnits(String kind, int chunk) {
+		return this.pending.get(key(kind, chunk));
+	}
+
+	/**
+	 * Records the units of a chunk before uploading them.
+	 *
+	 * @param kind Kind of units (gold or data)
+	 * @param chunk Chunk number
+	 * @param units Units in JSON format
+	 * @throws IOException
+	 */
+	public void addUnits(String kind, int chunk, List<String> units) throws IOException {
+		for (String unit : units) {
+			this.write("unit\t" + kind + "\t" + chunk + "\t" + unit);
+		}
+
+		this.writer.flush();
+	}
+
+	/**
+	 * Records a chunk as uploaded.
+	 *
+	 * @param kind Kind of units (gold or data)
+	 * @param chunk Chunk number
+	 * @param count Number of units of the chunk
+	 * @throws IOException
+	 */
+	public void commit(String kind, int chunk, int count) throws IOException {
+		String key = key(kind, chunk);
+
+		this.pending.remove(key);
+		this.committed.put(key, count);
+
+		this.write("commit\t" + kind + "\t" + chunk + "\t" + count);
+		this.writer.flush();
+	}
+
+	/**
+	 * Reopens the journal of an interrupted population for appending.
+	 *
+	 * @throws IOException
+	 */
+	public void resume() throws IOException {
+		if (this.writer == null) {
+			this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), ENCODING));
+		}
+	}
+
+	/**
+	 * Removes the journal once the population has finished.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		this.close();
+		this.file.delete();
+	}
+
+	/**
+	 * Closes the journal file, keeping it on disk.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (this.writer != null) {
+			this.writer.close();
+			this.writer = null;
+		}
+	}
+
+	private void write(String line) throws IOException {
+		this.writer.write(line);
+		this.writer.write("\n");
+	}
+
+	private static String key(String kind, int chunk) {
+		return kind + "/" + chunk;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the rate of the requests. Tokens are added at a
+ * constant rate up to the size of the burst, and each request takes one,
+ * waiting for it if there is none. It's thread safe: a request reserves its
+ * token holding the lock, and waits for it after releasing the lock.
+ *
+ * @author alex952
+ */
+public class RateLimiter {
+
+	/**
+	 * Tokens added per nanosecond (0 for no limit)
+	 */
+	private final double rate;
+	private final double burst;
+	private double tokens;
+	private long last;
+
+	/**
+	 * Main constructor. The bucket starts full.
+	 *
+	 * @param perSecond Sustained requests per second, 0 or less for no limit
+	 * @param burst Requests that can be done at once after being idle
+	 */
+	public RateLimiter(double perSecond, int burst) {
+		this.rate = Math.max(0.0, perSecond) / TimeUnit.SECONDS.toNanos(1);
+		this.burst = Math.max(1, burst);
+		this.tokens = this.burst;
+		this.last = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token, waiting until there is one.
+	 *
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException {
+		if (this.rate == 0.0) {
+			return;
+		}
+
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+
+			this.tokens = Math.min(this.burst, this.tokens + (now - this.last) * this.rate);
+			this.last = now;
+			this.tokens -= 1;
+
+			//A negative balance is the queue of requests already waiting
+			wait = this.tokens >= 0 ? 0 : (long) (-this.tokens / this.rate);
+		}
+
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * Checks the rate of 8 threads doing 300 requests through a limiter of
+	 * 100 requests per second with a burst of 10, which should take about
+	 * 2.9 seconds.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final RateLimiter limiter = new RateLimiter(100, 10);
+		Thread[] threads = new Thread[8];
+		long start = System.nanoTime();
+
+		for (int i = 0; i < threads.length; i++) {
+			final int requests = i < 4 ? 38 : 37;
+
+			threads[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						for (int r = 0; r < requests; r++) {
+							limiter.acquire();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		System.out.println("300 requests in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
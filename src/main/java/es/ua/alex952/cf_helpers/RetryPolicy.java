@@ -0,0 +1,116 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import java.util.Random;
+
+/**
+ * Decides which failed requests are retried and how long to wait before.
+ *
+ * Requests throttled by the server (429) are always retried, as they
+ * weren't processed. Idempotent requests are also retried on server errors
+ * (5xx) and on connection errors. The wait doubles with every attempt from
+ * the base delay, randomized between its half and its whole so the clients
+ * throttled at once don't retry at once, and never shorter than the
+ * Retry-After of the response.
+ *
+ * @author alex952
+ */
+public class RetryPolicy {
+
+	/**
+	 * Longest wait between attempts, in milliseconds
+	 */
+	private static final long MAX_DELAY = 60000;
+
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	private final int maxAttempts;
+	private final long baseDelay;
+	private final Random random = new Random();
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param maxAttempts Attempts of each request, the first one included
+	 * @param baseDelay Wait before the first retry, in milliseconds
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelay = Math.max(1, baseDelay);
+	}
+
+	/**
+	 * Wait before retrying a failed request.
+	 *
+	 * @param e The error of the request
+	 * @param attempt Number of the attempt that failed, from 1
+	 * @param idempotent Whether the request can be done twice safely
+	 * @return The wait in milliseconds, or -1 if it mustn't be retried
+	 */
+	public long getDelay(RuntimeException e, int attempt, boolean idempotent) {
+		if (attempt >= this.maxAttempts) {
+			return -1;
+		}
+
+		long retryAfter = 0;
+
+		if (e instanceof UniformInterfaceException) {
+			ClientResponse response = ((UniformInterfaceException) e).getResponse();
+			int status = response.getStatus();
+
+			if (status == TOO_MANY_REQUESTS) {
+				retryAfter = parseRetryAfter(response.getHeaders().getFirst("Retry-After"));
+			} else if (!idempotent || status < 500) {
+				return -1;
+			}
+		} else if (!(e instanceof ClientHandlerException) || !idempotent) {
+			return -1;
+		}
+
+		long backoff = this.baseDelay << Math.min(attempt - 1, 30);
+		if (backoff <= 0 || backoff > MAX_DELAY) {
+			backoff = MAX_DELAY;
+		}
+
+		long delay = backoff / 2 + (long) (this.random.nextDouble() * (backoff / 2 + 1));
+
+		return Math.max(delay, retryAfter);
+	}
+
+	/**
+	 * Reads a Retry-After header given in seconds.
+	 *
+	 * @return The wait in milliseconds, 0 if missing or given as a date
+	 */
+	private static long parseRetryAfter(String value) {
+		if (value == null) {
+			return 0;
+		}
+
+		try {
+			return Math.min(MAX_DELAY, Long.parseLong(value.trim()) * 1000);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -19,14 +19,19 @@
 package es.ua.alex952.cf_helpers.params;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
 import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
 
 /**
@@ -35,6 +40,14 @@ import org.codehaus.jackson.node.ObjectNode;
  * @author alex952
  */
 public class JSONParams {
+	
+	/**
+	 * Mapper shared by all the instances. Building a mapper is expensive, 
+	 * and once configured it's thread safe, as are its readers and writers.
+	 */
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final ObjectReader reader = mapper.reader(JsonNode.class);
+	private static final ObjectWriter writer = mapper.writer();
 
 	JsonNode rootNode = null;
 	
@@ -42,8 +55,7 @@ public class JSONParams {
 	 * Main constructor. Initializes a blank node
 	 */
 	public JSONParams() {
-		ObjectMapper mapper = new ObjectMapper();
-		rootNode = mapper.createObjectNode();
+		rootNode = JsonNodeFactory.instance.objectNode();
 	}
 	
 	/**
@@ -54,14 +66,34 @@ public class JSONParams {
 	 * @throws IOException If the structure is not correct
 	 */
 	public JSONParams(String json) throws IOException {
-		ObjectMapper mapper = new ObjectMapper();
-		rootNode = mapper.readValue(json, JsonNode.class);
+		rootNode = reader.readValue(json);
 	}
 	
-	private JSONParams(JsonNode node) {
+	/**
+	 * Constructor that builds up a node reading its
+	 * json specification from a stream
+	 * 
+	 * @param json Stream containing the JSON
+	 * @throws IOException If the structure is not correct
+	 */
+	public JSONParams(InputStream json) throws IOException {
+		rootNode = reader.readValue(json);
+	}
+	
+	JSONParams(JsonNode node) {
 		this.rootNode = node;
 	}
 	
+	/**
+	 * Factory of the shared mapper, for reading or writing JSON in streaming
+	 * mode with the same configuration.
+	 * 
+	 * @return The JSON factory
+	 */
+	public static JsonFactory getJsonFactory() {
+		return mapper.getJsonFactory();
+	}
+	
 	/**
 	 * Returns a property of an object node
 	 * 
@@ -75,6 +107,86 @@ public class JSONParams {
 		return ret;
 	}
 	
+	/**
+	 * Returns a nested property, walking the nodes in one call
+	 *
+	 * @param path compiled path of the property
+	 * @return the property or null if it doesn't exist
+	 */
+	public String getProperty(JSONPath path) {
+		JsonNode node = path.resolve(rootNode);
+
+		return node == null ? null : node.asText();
+	}
+
+	/**
+	 * Returns a nested property as an integer
+	 *
+	 * @param path compiled path of the property
+	 * @return the property
+	 * @throws NumberFormatException if it doesn't exist or isn't a number
+	 */
+	public int getInt(JSONPath path) {
+		JsonNode node = path.resolve(rootNode);
+
+		if (node == null) {
+			throw new NumberFormatException("Missing property " + path);
+		}
+		if (node.isNumber()) {
+			return node.getIntValue();
+		}
+
+		return Integer.parseInt(node.asText());
+	}
+
+	/**
+	 * Returns a nested property as a double
+	 *
+	 * @param path compiled path of the property
+	 * @return the property
+	 * @throws NumberFormatException if it doesn't exist or isn't a number
+	 */
+	public double getDouble(JSONPath path) {
+		JsonNode node = path.resolve(rootNode);
+
+		if (node == null) {
+			throw new NumberFormatException("Missing property " + path);
+		}
+		if (node.isNumber()) {
+			return node.getDoubleValue();
+		}
+
+		return Double.parseDouble(node.asText());
+	}
+
+	/**
+	 * Gets a nested object in the form of a JSON object
+	 *
+	 * @param path compiled path of the object
+	 * @return a JSON object or null if it doesn't exist
+	 */
+	public JSONParams getObject(JSONPath path) {
+		JsonNode node = path.resolve(rootNode);
+
+		return node == null ? null : new JSONParams(node);
+	}
+
+	/**
+	 * Size of a nested JSON array
+	 *
+	 * @param path compiled path of the array
+	 * @return the size of the array, 0 if it doesn't exist
+	 */
+	public int size(JSONPath path) {
+		JsonNode node = path.resolve(rootNode);
+
+		if (node == null) {
+			return 0;
+		}
+
+		return node.isArray() ? node.size() : 1;
+	}
+
 	/**
 	 * Gets a JSON object from an array by its index
 	 * 
@@ -121,7 +233,11 @@ public class JSONParams {
 	 * @return the JSON in String
 	 */
 	public String toString() {
-		return this.rootNode.toString();
+		try {
+			return writer.writeValueAsString(this.rootNode);
+		} catch (IOException e) {
+			return this.rootNode.toString();
+		}
 	}
 	
 	/**
@@ -164,4 +280,42 @@ public class JSONParams {
 			obj.put(key, value);
 		}
 	}
+	
+	/**
+	 * Micro-benchmark of the serialization of one unit, comparing a new 
+	 * mapper per unit (as it was done) with the shared mapper.
+	 */
+	public static void main(String[] args) throws IOException {
+		int units = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < units; i++) {
+				ObjectMapper m = new ObjectMapper();
+				ObjectNode unit = m.createObjectNode();
+				
+				unit.put("lo", "The wind lashed the trees " + i);
+				unit.put("tr", "El viento azotaba los arboles " + i);
+				unit.put("apertium", "El viento azot\u00f3 los \u00e1rboles " + i);
+				unit.put("bing", "El viento azotaba los \u00e1rboles " + i);
+				m.writeValueAsString(unit);
+			}
+			long before = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (int i = 0; i < units; i++) {
+				JSONParams unit = new JSONParams();
+				
+				unit.addProperty("lo", "The wind lashed the trees " + i);
+				unit.addProperty("tr", "El viento azotaba los arboles " + i);
+				unit.addProperty("apertium", "El viento azot\u00f3 los \u00e1rboles " + i);
+				unit.addProperty("bing", "El viento azotaba los \u00e1rboles " + i);
+				unit.toString();
+			}
+			long after = System.nanoTime() - start;
+			
+			System.out.println("Round " + round + ": new mapper per unit " + (before / units) 
+					+ " ns/unit, shared mapper " + (after / units) + " ns/unit");
+		}
+	}
 }
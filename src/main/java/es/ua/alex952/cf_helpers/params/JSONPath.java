@@ -0,0 +1,137 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.params;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * Path to a nested value of a JSON document, written as a JSON Pointer
+ * (for example <code>/results/judgments/0/data</code>). The path is parsed
+ * once and can be resolved against any number of documents, walking the
+ * nodes directly instead of wrapping every step in a {@link JSONParams}.
+ * 
+ * Instances are immutable, so they can be kept in constants and shared
+ * between threads.
+ *
+ * @author alex952
+ */
+public final class JSONPath {
+
+	private final String pointer;
+	private final String[] fields;
+	private final int[] indexes;
+
+	private JSONPath(String pointer, String[] fields, int[] indexes) {
+		this.pointer = pointer;
+		this.fields = fields;
+		this.indexes = indexes;
+	}
+
+	/**
+	 * Parses a JSON Pointer. The empty string is the document itself, and
+	 * "~1" and "~0" stand for "/" and "~" inside a step.
+	 * 
+	 * @param pointer The pointer
+	 * @return The compiled path
+	 * @throws IllegalArgumentException If the pointer doesn't start with "/"
+	 */
+	public static JSONPath compile(String pointer) {
+		if (pointer.length() > 0 && pointer.charAt(0) != '/') {
+			throw new IllegalArgumentException("A JSON pointer must start with '/': " + pointer);
+		}
+
+		List<String> steps = new ArrayList<String>();
+		int start = 1;
+
+		while (start <= pointer.length() && pointer.length() > 0) {
+			int end = pointer.indexOf('/', start);
+			if (end < 0) {
+				end = pointer.length();
+			}
+
+			steps.add(pointer.substring(start, end).replace("~1", "/").replace("~0", "~"));
+			start = end + 1;
+		}
+
+		String[] fields = steps.toArray(new String[steps.size()]);
+		int[] indexes = new int[fields.length];
+
+		for (int i = 0; i < fields.length; i++) {
+			indexes[i] = index(fields[i]);
+		}
+
+		return new JSONPath(pointer, fields, indexes);
+	}
+
+	/**
+	 * Path of a field of the value pointed by this path.
+	 * 
+	 * @param field Name of the field
+	 * @return The new path
+	 */
+	public JSONPath child(String field) {
+		return compile(this.pointer + "/" + field.replace("~", "~0").replace("/", "~1"));
+	}
+
+	/**
+	 * Walks the path from a node.
+	 * 
+	 * @param node The node where the path starts
+	 * @return The node at the end of the path, or null if any step is missing
+	 */
+	JsonNode resolve(JsonNode node) {
+		for (int i = 0; i < this.fields.length && node != null; i++) {
+			JsonNode next = node.get(this.fields[i]);
+
+			if (next == null && this.indexes[i] >= 0) {
+				next = node.get(this.indexes[i]);
+			}
+
+			node = next;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Array index of a step, or -1 if it can only be a field name.
+	 */
+	private static int index(String step) {
+		if (step.length() == 0 || step.length() > 9) {
+			return -1;
+		}
+
+		for (int i = 0; i < step.length(); i++) {
+			char c = step.charAt(i);
+
+			if (c < '0' || c > '9' || (i == 0 && c == '0' && step.length() > 1)) {
+				return -1;
+			}
+		}
+
+		return Integer.parseInt(step);
+	}
+
+	@Override
+	public String toString() {
+		return this.pointer;
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.params;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Pull parser over big JSON objects, such as the units or the judgments of
+ * a job. The object is read from the stream field by field, and only the
+ * value of the current field is built as a tree, so the whole document is
+ * never held in memory.
+ *
+ * @author alex952
+ */
+public class JSONStreamReader {
+
+	/**
+	 * Receives every field of the object being read.
+	 */
+	public interface FieldHandler {
+
+		/**
+		 * Called once for each field, in the order of the document.
+		 *
+		 * @param key The key of the field
+		 * @param value The value of the field
+		 * @throws IOException
+		 */
+		void field(String key, JSONParams value) throws IOException;
+	}
+
+	/**
+	 * Reads a JSON object, handing each one of its fields to the handler.
+	 *
+	 * @param in The stream containing the object
+	 * @param handler The handler of the fields
+	 * @throws IOException If the stream doesn't contain a valid object
+	 */
+	public static void readFields(InputStream in, FieldHandler handler) throws IOException {
+		JsonParser parser = JSONParams.getJsonFactory().createJsonParser(in);
+
+		try {
+			if (!start(parser)) {
+				return;
+			}
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String key = parser.getCurrentName();
+				parser.nextToken();
+
+				handler.field(key, new JSONParams(parser.readValueAs(JsonNode.class)));
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Reads the keys of a JSON object, skipping their values.
+	 *
+	 * @param in The stream containing the object
+	 * @return The keys, in the order of the document
+	 * @throws IOException If the stream doesn't contain a valid object
+	 */
+	public static List<String> readKeys(InputStream in) throws IOException {
+		JsonParser parser = JSONParams.getJsonFactory().createJsonParser(in);
+		List<String> keys = new ArrayList<String>();
+
+		try {
+			if (!start(parser)) {
+				return keys;
+			}
+
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				keys.add(parser.getCurrentName());
+
+				parser.nextToken();
+				parser.skipChildren();
+			}
+		} finally {
+			parser.close();
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Moves the parser to the start of the root object. An empty array is
+	 * accepted as an empty object, as the server answers that way when
+	 * there is nothing to return.
+	 */
+	private static boolean start(JsonParser parser) throws IOException {
+		JsonToken token = parser.nextToken();
+
+		if (token == JsonToken.START_OBJECT) {
+			return true;
+		} else if (token == JsonToken.START_ARRAY && parser.nextToken() == JsonToken.END_ARRAY) {
+			return false;
+		}
+
+		throw new IOException("A JSON object was expected, found " + token);
+	}
+}
@@ -0,0 +1,262 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming writer of CSV records as described by RFC 4180: fields are
+ * separated by commas, records end with CRLF, and a field is quoted only if
+ * it contains a comma, a quote or a line break, doubling its quotes.
+ * 
+ * Fields are copied to a reused buffer that is written to the output when
+ * it's full, so nothing is allocated by field.
+ *
+ * @author alex952
+ */
+public class CSVWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Writer out;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int length = 0;
+	private boolean firstField = true;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param out Where the records are written. It doesn't need to be 
+	 * buffered.
+	 */
+	public CSVWriter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes a text field. A null field is written empty.
+	 * 
+	 * @param value The field
+	 * @throws IOException If the output can't be written
+	 */
+	public void field(String value) throws IOException {
+		this.separate();
+
+		if (value == null) {
+			return;
+		}
+
+		int n = value.length();
+		boolean quote = false;
+		for (int i = 0; i < n && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (!quote) {
+			this.append(value, 0, n);
+			return;
+		}
+
+		this.append('"');
+		int start = 0;
+		for (int i = 0; i < n; i++) {
+			if (value.charAt(i) == '"') {
+				//The quote is written twice: once with the run before it
+				this.append(value, start, i + 1);
+				start = i;
+			}
+		}
+		this.append(value, start, n);
+		this.append('"');
+	}
+
+	/**
+	 * Writes a number field.
+	 * 
+	 * @param value The field
+	 * @throws IOException If the output can't be written
+	 */
+	public void field(long value) throws IOException {
+		this.separate();
+
+		if (this.length + 20 > BUFFER_SIZE) {
+			this.flushBuffer();
+		}
+
+		if (value == Long.MIN_VALUE) {
+			this.append(String.valueOf(value), 0, 20);
+			return;
+		}
+		if (value < 0) {
+			this.buffer[this.length++] = '-';
+			value = -value;
+		}
+
+		int end = this.length + digits(value);
+		int i = end;
+		do {
+			this.buffer[--i] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+
+		this.length = end;
+	}
+
+	/**
+	 * Ends the current record.
+	 * 
+	 * @throws IOException If the output can't be written
+	 */
+	public void endRecord() throws IOException {
+		this.append('\r');
+		this.append('\n');
+		this.firstField = true;
+	}
+
+	/**
+	 * Writes the buffered records to the output and flushes it.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.flushBuffer();
+		this.out.flush();
+	}
+
+	/**
+	 * Writes the buffered records and closes the output.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flushBuffer();
+		} finally {
+			this.out.close();
+		}
+	}
+
+	private void separate() throws IOException {
+		if (this.firstField) {
+			this.firstField = false;
+		} else {
+			this.append(',');
+		}
+	}
+
+	private void append(char c) throws IOException {
+		if (this.length == BUFFER_SIZE) {
+			this.flushBuffer();
+		}
+
+		this.buffer[this.length++] = c;
+	}
+
+	private void append(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (this.length == BUFFER_SIZE) {
+				this.flushBuffer();
+			}
+
+			int n = Math.min(end - start, BUFFER_SIZE - this.length);
+			s.getChars(start, start + n, this.buffer, this.length);
+			this.length += n;
+			start += n;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (this.length > 0) {
+			this.out.write(this.buffer, 0, this.length);
+			this.length = 0;
+		}
+	}
+
+	private static int digits(long value) {
+		int n = 1;
+
+		while (value >= 10) {
+			value /= 10;
+			n++;
+		}
+
+		return n;
+	}
+
+	/**
+	 * Benchmark of the throughput of the writer, with records shaped like 
+	 * the ones of results.csv.
+	 */
+	public static void main(String[] args) throws IOException {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		String[] texts = {
+			"The wind lashed the trees",
+			"El viento azotó los árboles, y la lluvia",
+			"Ветер хлестал деревья",
+			"He said \"no\""
+		};
+
+		Writer discard = new Writer() {
+
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		for (int round = 0; round < 5; round++) {
+			CSVWriter csv = new CSVWriter(discard);
+			long fields = 0;
+			long start = System.nanoTime();
+
+			for (int r = 0; r < records; r++) {
+				for (String text : texts) {
+					csv.field(text);
+				}
+				csv.field(5);
+				fields += texts.length + 1;
+
+				for (int j = 0; j < 5; j++) {
+					csv.field(1000000 + r);
+					csv.field("adequacy_bing");
+					csv.field(r % 6);
+					csv.field("fluency_bing");
+					csv.field(j);
+					fields += 5;
+				}
+
+				csv.endRecord();
+			}
+			csv.flush();
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println("Round " + round + ": " + (long) (fields / seconds / 1e6 * 100) / 100.0 
+					+ " million fields/s");
+		}
+	}
+}
@@ -20,47 +20,73 @@ package es.ua.alex952.cf_helpers.result_helpers;
 import es.ua.alex952.cf_helpers.params.JSONParams;
 import es.ua.alex952.cf_helpers.translation_services.Service;
 import java.awt.Desktop;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import org.codehaus.jackson.JsonGenerator;
 
 /**
- * <<Singleton>>
+ * Writes the HTML report of a job. Every section is written straight to the
+ * output as soon as it's generated, along with the script that draws it, so
+ * no more than one section is held in memory at a time.
+ * 
+ * Each report has its own generator, so several reports can be generated
+ * at the same time. The sections of one generator are written one at a 
+ * time, even if they're generated from different threads.
  *
  * @author alex952
  */
-public class HTMLGenerator {
+public class HTMLGenerator implements ReportGenerator {
 
-	private String headTop = "";
-	private String head = "";
-	private String headBottom = "";
-	private String bodyTop = "";
-	private String body = "";
-	private String bodyBottom = "";
-	private String htmlGenerated = "";
-	private static HTMLGenerator instance = null;
+	private static final int DEFAULT_TOP_PAIRS = 0;
+	private static final int DEFAULT_MIN_JUDGMENTS = 1;
+	private static final int DEFAULT_PAGE_SIZE = 500;
+
+	private final Writer out;
+	private final File dataDir;
+	private boolean started = false;
+	private boolean finished = false;
 
 	/**
-	 * Private constructor
+	 * Constructor of a generator writing to an output, with the data of the
+	 * charts inlined in the report. The output should be buffered, as it's
+	 * written in small pieces.
+	 * 
+	 * @param out Where the report is written
 	 */
-	private HTMLGenerator() {
+	public HTMLGenerator(Writer out) {
+		this(out, null);
 	}
 
 	/**
-	 * Entrance point of the class (Singleton pattern).
-	 *
-	 * @return Unique instance of the class
+	 * Constructor of a generator writing the data of the charts to separate
+	 * files, which the report loads when they're shown. The report only 
+	 * holds the markup and the code of the charts, so it's light whatever 
+	 * the size of the job.
+	 * 
+	 * The data files are loaded by the name of the directory, so it must be
+	 * placed next to the report.
+	 * 
+	 * @param out Where the report is written
+	 * @param dataDir Directory of the data files, null to inline the data
 	 */
-	public static HTMLGenerator getGenerator() {
-		if (instance == null) {
-			instance = new HTMLGenerator();
-		}
+	public HTMLGenerator(Writer out, File dataDir) {
+		this.out = out;
+		this.dataDir = dataDir;
+	}
 
-		return instance;
+	/**
+	 * Constructor of a generator keeping the report in memory, see
+	 * {@link HTMLGenerator#getHTML()}.
+	 */
+	public HTMLGenerator() {
+		this(new StringWriter());
 	}
 
 	/**
@@ -114,272 +140,441 @@ public class HTMLGenerator {
 	 * and adequacy).
 	 *
 	 * @param raters Hashmap of pairs of raters
+	 * @throws IOException If the report can't be written
 	 */
-	public void generateKappaAverageCharts(HashMap<String, HashMap<String, KappaRaters>> raters) {
-		String chart = "var adequacy = new google.visualization.DataTable();\n"
-				+ "adequacy.addColumn(\"string\", \"Service\");\n"
-				+ "adequacy.addColumn(\"number\", \"Adequacy\");\n"
-				+ "var fluency = new google.visualization.DataTable();\n"
-				+ "fluency.addColumn(\"string\", \"Service\");\n"
-				+ "fluency.addColumn(\"number\", \"Fluency\");\n";
-
-		String adata = "";
-		String fdata = "";
-
-		Set<String> services = (Set<String>) raters.keySet();
-		int scount = 0;
+	@Override
+	public synchronized void generateKappaAverageCharts(HashMap<String, RaterPairMap> raters) throws IOException {
+		this.writeMarkup("<h2>Kappa averages by service</h2>\n"
+				+ "<div id='kappa_average_adequacy'></div>\n"
+				+ "<div id='kappa_average_fluency'></div>\n");
 
-		for (String service : services) {
-			HashMap<String, KappaRaters> serviceRatters = raters.get(service);
+		JsonGenerator data = this.openData("kappa_average");
+		data.writeStartObject();
 
-			double f = 0.0;
+		data.writeArrayFieldStart("adequacy");
+		for (String service : raters.keySet()) {
+			RaterPairMap serviceRatters = raters.get(service);
 			double a = 0.0;
 
-			for (String key : serviceRatters.keySet()) {
-				f += serviceRatters.get(key).getFluencyKappa();
-				a += serviceRatters.get(key).getAdequacyKappa();
+			for (KappaRaters kr : serviceRatters) {
+				a += kr.getAdequacyKappa();
 			}
 
-			f /= serviceRatters.size();
-			a /= serviceRatters.size();
+			writeRow(data, service, a / serviceRatters.size());
+		}
+		data.writeEndArray();
 
-			adata += "['" + service + "', " + a + "]";
-			fdata += "['" + service + "', " + f + "]";
+		data.writeArrayFieldStart("fluency");
+		for (String service : raters.keySet()) {
+			RaterPairMap serviceRatters = raters.get(service);
+			double f = 0.0;
 
-			if (scount++ < services.size() - 1) {
-				adata += ",";
-				fdata += ",";
+			for (KappaRaters kr : serviceRatters) {
+				f += kr.getFluencyKappa();
 			}
-		}
 
-		chart += "adequacy.addRows([\n"
-				+ adata
-				+ "]);\n";
+			writeRow(data, service, f / serviceRatters.size());
+		}
+		data.writeEndArray();
 
-		chart += "fluency.addRows([\n"
-				+ fdata
-				+ "]);\n";
+		data.writeEndObject();
+		this.closeData("kappa_average", data);
 
-		chart += "var optionsA = {\n"
-				+ "title: 'Translation\\'s Adequacy by translation service',\n"
-				+ "hAxis: {title: 'Adequacy', titleTextStyle: {color: 'red'}}};\n";
+		this.writeScript("load('kappa_average', function(data) {\n"
+				+ "columnChart('kappa_average_adequacy', 'Translation\\'s Adequacy by translation service', 'Adequacy', ['Adequacy'], data.adequacy);\n"
+				+ "columnChart('kappa_average_fluency', 'Translation\\'s Fluency by translation service', 'Fluency', ['Fluency'], data.fluency);\n"
+				+ "});\n");
+	}
 
-		chart += "var optionsF = {\n"
-				+ "title: 'Translation\\'s Fluency by translation service',\n"
-				+ "hAxis: {title: 'Fluency', titleTextStyle: {color: 'red'}}};\n";
+	/**
+	 * Generates charts representing the agreement among all the raters of 
+	 * each service (Fleiss' kappa and Krippendorff's alpha), for fluency and
+	 * adequacy.
+	 *
+	 * @param agreement Hashmap of the agreement of each service
+	 * @throws IOException If the report can't be written
+	 */
+	@Override
+	public synchronized void generateAgreementCharts(HashMap<String, MultiRaterAgreement> agreement) throws IOException {
+		this.writeMarkup("<h2>Agreement among all raters by service</h2>\n"
+				+ "<div id='agreement_adequacy'></div>\n"
+				+ "<div id='agreement_fluency'></div>\n");
 
-		chart += "var chartA = new google.visualization.ColumnChart(document.getElementById('kappa_average_adequacy'));\n";
-		chart += "var chartF = new google.visualization.ColumnChart(document.getElementById('kappa_average_fluency'));\n";
-		chart += "chartA.draw(adequacy, optionsA);\n";
-		chart += "chartF.draw(fluency, optionsF);\n";
+		JsonGenerator data = this.openData("agreement");
+		data.writeStartObject();
 
-		head += chart;
-		body += "<h2>Kappa averages by service</h2>\n"
-				+ "<div id='kappa_average_adequacy'></div>\n"
-				+ "<div id='kappa_average_fluency'></div>\n";
-	}
+		data.writeArrayFieldStart("adequacy");
+		for (String service : agreement.keySet()) {
+			MultiRaterAgreement a = agreement.get(service);
 
-	public void generateScoreCharts(JSONParams judgments, Service[] services) {
-		String chart = "var adequacy = new google.visualization.DataTable();\n"
-				+ "adequacy.addColumn(\"string\", \"Service\");\n"
-				+ "adequacy.addColumn(\"number\", \"Adequacy\");\n"
-				+ "var fluency = new google.visualization.DataTable();\n"
-				+ "fluency.addColumn(\"string\", \"Service\");\n"
-				+ "fluency.addColumn(\"number\", \"Fluency\");\n";
-
-		String adata = "";
-		String fdata = "";
-
-		Double[] acumFluencyServices = new Double[services.length];
-		Double[] acumAdequacyServices = new Double[services.length];
-		Iterator<String> unitsIterator = judgments.getKeySet();
-		while (unitsIterator.hasNext()) {
-			String u = unitsIterator.next();
-			JSONParams unit = judgments.getObject(u);
-
-			for (int i = 0; i < services.length; i++) {
-				String service = services[i].getName();
-				acumFluencyServices[i] = Double.parseDouble(unit.getObject("fluency_" + service).getProperty("avg"));
-				acumAdequacyServices[i] = Double.parseDouble(unit.getObject("adequacy_" + service).getProperty("avg"));
-			}
+			writeRow(data, service, a.getAdequacyFleissKappa(), a.getAdequacyAlpha());
 		}
+		data.writeEndArray();
 
-		for (int i = 0; i < services.length; i++) {
-			acumFluencyServices[i] /= judgments.size();
-			acumAdequacyServices[i] /= judgments.size();
+		data.writeArrayFieldStart("fluency");
+		for (String service : agreement.keySet()) {
+			MultiRaterAgreement a = agreement.get(service);
+
+			writeRow(data, service, a.getFluencyFleissKappa(), a.getFluencyAlpha());
 		}
+		data.writeEndArray();
 
-		for (int i = 0; i < services.length; i++) {
-			String service = services[i].getName();
+		data.writeEndObject();
+		this.closeData("agreement", data);
 
-			adata += "['" + service + "', " + acumAdequacyServices[i] + "]";
-			fdata += "['" + service + "', " + acumFluencyServices[i] + "]";
+		this.writeScript("load('agreement', function(data) {\n"
+				+ "var columns = ['Fleiss\\' kappa', 'Krippendorff\\'s alpha'];\n"
+				+ "columnChart('agreement_adequacy', 'Raters\\' agreement on Adequacy by translation service', 'Adequacy', columns, data.adequacy);\n"
+				+ "columnChart('agreement_fluency', 'Raters\\' agreement on Fluency by translation service', 'Fluency', columns, data.fluency);\n"
+				+ "});\n");
+	}
 
-			if (i < services.length - 1) {
-				adata += ",";
-				fdata += ",";
-			}
-		}
+	/**
+	 * Generates charts representing the average fluency and adequacy scores
+	 * of each service.
+	 *
+	 * @param scores The average scores of the services
+	 * @throws IOException If the report can't be written
+	 */
+	@Override
+	public synchronized void generateScoreCharts(ScoreAggregator scores) throws IOException {
+		this.writeMarkup("<h2>Adequacy/Fluency averages by service</h2>\n"
+				+ "<div id='score_average_adequacy'></div>\n"
+				+ "<div id='score_average_fluency'></div>\n");
 
-		chart += "adequacy.addRows([\n"
-				+ adata
-				+ "]);\n";
+		String[] services = scores.getServices();
+		JsonGenerator data = this.openData("score_average");
+		data.writeStartObject();
 
-		chart += "fluency.addRows([\n"
-				+ fdata
-				+ "]);\n";
+		data.writeArrayFieldStart("adequacy");
+		for (int i = 0; i < services.length; i++) {
+			writeRow(data, services[i], scores.getAdequacy(i));
+		}
+		data.writeEndArray();
 
-		chart += "var optionsA = {\n"
-				+ "title: 'Translation\\'s Adequacy by translation service',\n"
-				+ "hAxis: {title: 'Adequacy', titleTextStyle: {color: 'red'}}};\n";
+		data.writeArrayFieldStart("fluency");
+		for (int i = 0; i < services.length; i++) {
+			writeRow(data, services[i], scores.getFluency(i));
+		}
+		data.writeEndArray();
 
-		chart += "var optionsF = {\n"
-				+ "title: 'Translation\\'s Fluency by translation service',\n"
-				+ "hAxis: {title: 'Fluency', titleTextStyle: {color: 'red'}}};\n";
+		data.writeEndObject();
+		this.closeData("score_average", data);
 
-		chart += "var chartA = new google.visualization.ColumnChart(document.getElementById('score_average_adequacy'));\n";
-		chart += "var chartF = new google.visualization.ColumnChart(document.getElementById('score_average_fluency'));\n";
-		chart += "chartA.draw(adequacy, optionsA);\n";
-		chart += "chartF.draw(fluency, optionsF);\n";
+		this.writeScript("load('score_average', function(data) {\n"
+				+ "columnChart('score_average_adequacy', 'Translation\\'s Adequacy by translation service', 'Adequacy', ['Adequacy'], data.adequacy);\n"
+				+ "columnChart('score_average_fluency', 'Translation\\'s Fluency by translation service', 'Fluency', ['Fluency'], data.fluency);\n"
+				+ "});\n");
+	}
 
-		head += chart;
-		body += "<h2>Adequacy/Fluency averages by service</h2>\n"
-				+ "<div id='score_average_adequacy'></div>\n"
-				+ "<div id='score_average_fluency'></div>\n";
+	/**
+	 * Generates a table for each service containing the info about factor Kappa
+	 * calculated every pair of raters, with the default limits.
+	 *
+	 * @param raters Hashmap of pairs of raters
+	 * @throws IOException If the report can't be written
+	 */
+	public void generateKappaTable(HashMap<String, RaterPairMap> raters) throws IOException {
+		this.generateKappaTable(raters, DEFAULT_TOP_PAIRS, DEFAULT_MIN_JUDGMENTS, DEFAULT_PAGE_SIZE);
 	}
 
 	/**
 	 * Generates a table for each service containing the info about factor Kappa
-	 * calculated every pair of raters.
+	 * calculated every pair of raters. Only the pairs that have rated together
+	 * are listed, one per row, the ones with more units in common first.
+	 * 
+	 * The table of a service is collapsed until the user opens it, and its
+	 * rows are split in pages that aren't loaded until they're shown.
 	 *
 	 * @param raters Hashmap of pairs of raters
+	 * @param topPairs Maximum number of pairs listed by service, 0 for all
+	 * @param minJudgments Minimum number of units in common of a listed pair
+	 * @param pageSize Number of pairs in each page
+	 * @throws IOException If the report can't be written
 	 */
-	public void generateKappaTable(HashMap<String, HashMap<String, KappaRaters>> raters) {
+	@Override
+	public synchronized void generateKappaTable(HashMap<String, RaterPairMap> raters, 
+			int topPairs, int minJudgments, int pageSize) throws IOException {
+		pageSize = Math.max(1, pageSize);
 
 		for (String service : raters.keySet()) {
-			HashMap<String, KappaRaters> serviceRatters = raters.get(service);
-
-			body += "<h2>Kappa results for service " + service + "</h2>\n"
-					+ "<h3>Fluency kappa</h3>\n"
-					+ "<div id=\"kappa_fluency_" + service + "\"></div>\n"
-					+ "<h3>Adequacy kappa</h3>\n"
-					+ "<div id=\"kappa_adequacy_" + service + "\"></div>\n";
-
-			HashSet<Integer> leftPart = new HashSet<Integer>();
-			HashSet<Integer> rightPart = new HashSet<Integer>();
-			for (String key : serviceRatters.keySet()) {
-				KappaRaters rater = serviceRatters.get(key);
-				leftPart.add(rater.getRaterA());
-				rightPart.add(rater.getRaterB());
+			RaterPairMap serviceRatters = raters.get(service);
+			List<KappaRaters> pairs = serviceRatters.select(topPairs, minJudgments);
+			int pages = (pairs.size() + pageSize - 1) / pageSize;
+			String id = "kappa_" + service;
+
+			this.writeMarkup("<h2 id=\"" + id + "_header\" style=\"cursor: pointer\">[+] Kappa results for service " + service + "</h2>\n"
+					+ "<div id=\"" + id + "\" style=\"display: none\">\n"
+					+ "<p>" + pairs.size() + " of " + serviceRatters.size() + " pairs of raters listed"
+					+ (minJudgments > 1 ? ", with " + minJudgments + " or more units in common" : "")
+					+ (topPairs > 0 ? ", at most the " + topPairs + " with more units in common" : "")
+					+ "</p>\n"
+					+ "<div><button id=\"" + id + "_prev\">&lt;</button> "
+					+ "<span id=\"" + id + "_page\"></span> "
+					+ "<button id=\"" + id + "_next\">&gt;</button></div>\n"
+					+ "<div id=\"" + id + "_table\"></div>\n"
+					+ "</div>\n");
+
+			for (int page = 0; page < pages; page++) {
+				JsonGenerator data = this.openData(id + "_" + page);
+
+				writePage(data, pairs, page * pageSize, Math.min(pairs.size(), (page + 1) * pageSize));
+				this.closeData(id + "_" + page, data);
 			}
 
-			String dataFluency = "var dataFluency = google.visualization.arrayToDataTable([\n"
-					+ "[ ' ', ";
+			this.writeScript("expandable('" + id + "', function() {\n"
+					+ "pagedTable('" + id + "', " + pages + ");\n"
+					+ "});\n");
+		}
+	}
+
+	/**
+	 * Writes the rows of a page of a kappa table as a JSON array of
+	 * [rater A, rater B, units, fluency kappa, adequacy kappa].
+	 */
+	private static void writePage(JsonGenerator data, List<KappaRaters> pairs, int from, int to) throws IOException {
+		data.writeStartArray();
+
+		for (int i = from; i < to; i++) {
+			KappaRaters kr = pairs.get(i);
+
+			data.writeStartArray();
+			data.writeNumber(kr.getRaterA());
+			data.writeNumber(kr.getRaterB());
+			data.writeNumber(kr.getJudgments());
+			writeValue(data, kr.getFluencyKappa());
+			writeValue(data, kr.getAdequacyKappa());
+			data.writeEndArray();
+		}
+
+		data.writeEndArray();
+	}
 
-			String dataAdequacy = "var dataAdequacy = google.visualization.arrayToDataTable([\n"
-					+ "[ ' ', ";
-			int count = 0;
+	/**
+	 * Writes a row of a column chart: the service and its values.
+	 */
+	private static void writeRow(JsonGenerator data, String service, double... values) throws IOException {
+		data.writeStartArray();
+		data.writeString(service);
+		for (double value : values) {
+			writeValue(data, value);
+		}
+		data.writeEndArray();
+	}
 
-			for (Integer right : rightPart) {
-				dataFluency += "'" + right.toString() + "'";
-				dataAdequacy += "'" + right.toString() + "'";
+	/**
+	 * Writes a value rounded to four decimals, or null when it isn't defined
+	 * (for instance, the kappa of two raters that always gave the same score).
+	 */
+	private static void writeValue(JsonGenerator data, double kappa) throws IOException {
+		if (Double.isNaN(kappa) || Double.isInfinite(kappa)) {
+			data.writeNull();
+		} else {
+			data.writeNumber(Math.round(kappa * 10000) / 10000.0);
+		}
+	}
 
-				if (count++ < rightPart.size() - 1) {
-					dataFluency += ", ";
-					dataAdequacy += ", ";
-				}
-			}
+	/**
+	 * Starts the data of a chart. It's written to its own file, which calls
+	 * loaded() when the report adds it to the page, or else inlined in the 
+	 * report as a JSON block that the browser doesn't parse until the chart
+	 * is drawn.
+	 */
+	private JsonGenerator openData(String id) throws IOException {
+		Writer w;
+
+		if (this.dataDir == null) {
+			w = this.out;
+			w.write("<script type=\"application/json\" id=\"data_" + id + "\">");
+		} else {
+			this.dataDir.mkdirs();
+			w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(this.dataDir, id + ".js")), "UTF-8"));
+			w.write("loaded('" + id + "', ");
+		}
 
-			dataFluency += "],\n";
-			dataAdequacy += "],\n";
-			int countl = 0;
-			int countr = 0;
-
-			for (Integer left : leftPart) {
-				dataFluency += "[ '" + left + "', ";
-				dataAdequacy += "[ '" + left + "', ";
-
-				for (Integer right : rightPart) {
-					if (serviceRatters.containsKey(left + "/" + right)) {
-						KappaRaters k = serviceRatters.get(left + "/" + right);
-
-						dataFluency += "'" + k.getFluencyKappa() + "'";
-						dataAdequacy += "'" + k.getAdequacyKappa() + "'";
-					} else {
-						dataFluency += "false";
-						dataAdequacy += "false";
-					}
-
-					if (countr++ < rightPart.size() - 1) {
-						dataFluency += ", ";
-						dataAdequacy += ", ";
-					}
-				}
-
-				dataFluency += "]";
-				dataAdequacy += "]";
-				if (countl++ < rightPart.size() - 1) {
-					dataFluency += ", ";
-					dataAdequacy += ", ";
-				}
-				dataFluency += "\n";
-				dataAdequacy += "\n";
-			}
+		JsonGenerator data = JSONParams.getJsonFactory().createJsonGenerator(w);
+		data.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		return data;
+	}
 
-			dataFluency += "]);\n";
-			dataAdequacy += "]);\n";
+	/**
+	 * Ends the data of a chart started with {@link HTMLGenerator#openData(java.lang.String)}.
+	 */
+	private void closeData(String id, JsonGenerator data) throws IOException {
+		Writer w = (Writer) data.getOutputTarget();
+		data.close();
+
+		if (this.dataDir == null) {
+			w.write("</script>\n");
+		} else {
+			try {
+				w.write(");\n");
+			} finally {
+				w.close();
+			}
+		}
+	}
 
-			head += dataAdequacy + dataFluency
-					+ "visualizationFluency = new google.visualization.Table(document.getElementById('kappa_fluency_" + service + "'));\n"
-					+ "visualizationAdequacy = new google.visualization.Table(document.getElementById('kappa_adequacy_" + service + "'));\n"
-					+ "visualizationFluency.draw(dataFluency, null);\n"
-					+ "visualizationAdequacy.draw(dataAdequacy, null);\n";
+	/**
+	 * Writes the markup of a section.
+	 */
+	private void writeMarkup(String markup) throws IOException {
+		if (this.finished) {
+			throw new IllegalStateException("The report is already finished");
+		}
+		if (!this.started) {
+			this.generateSurrondings();
+			this.started = true;
 		}
+
+		out.write(markup);
 	}
 
-	/*
-	 * public String generateHTML(HashMap<String, HashMap<String, KappaRaters>>
-	 * raters) { this.generateSurrondings(); return this.htmlGenerated;
+	/**
+	 * Writes the function that draws a section, once its markup and data are
+	 * written, and flushes the section.
+	 */
+	private void writeScript(String script) throws IOException {
+		out.write("<script type=\"text/javascript\">\n"
+				+ "draw(function() {\n");
+		out.write(script);
+		out.write("});\n"
+				+ "</script>\n");
+		out.flush();
 	}
+
+	/**
+	 * Writes the end of the report. Nothing can be generated afterwards, and
+	 * the output isn't closed.
+	 * 
+	 * @throws IOException If the report can't be written
 	 */
+	@Override
+	public synchronized void finish() throws IOException {
+		if (this.finished) {
+			return;
+		}
+
+		if (!this.started) {
+			this.generateSurrondings();
+			this.started = true;
+		}
+
+		out.write("</body>\n</html>");
+		out.flush();
+		this.finished = true;
+	}
+
 	/**
 	 * Returns the html generated by the above procedures along with the headers
-	 * and extra tags for a complete html output.
+	 * and extra tags for a complete html output. Only available when the
+	 * report is kept in memory.
 	 *
 	 * @return Complete HTML file (String) with all the contente generated
 	 */
-	public String getHTML() {
-		String html = "";
-
-		if (this.headTop == null || this.headTop.equals("")) {
-			generateSurrondings();
+	public synchronized String getHTML() {
+		if (!(this.out instanceof StringWriter)) {
+			throw new IllegalStateException("The report is being written to an output, not kept in memory");
 		}
 
-		html = this.headTop + this.head + this.headBottom
-				+ this.bodyTop + this.body + this.bodyBottom;
+		try {
+			this.finish();
+		} catch (IOException e) {
+			//A StringWriter doesn't fail
+		}
 
-		return html;
+		return this.out.toString();
 	}
 
 	/**
-	 * Generate the headers and extra tags of the resultant HTML.
+	 * Generate the headers of the resultant HTML, with the code shared by
+	 * the sections. The sections register their drawing functions with 
+	 * draw() as they're found in the body, and they are called once the 
+	 * visualization library is loaded. The data of a chart is got with 
+	 * load(), from the page or from its file.
 	 */
-	private void generateSurrondings() {
-		this.headTop = "<html>\n"
+	private void generateSurrondings() throws IOException {
+		String dataPath = this.dataDir == null ? "" : this.dataDir.getName() + "/";
+
+		out.write("<html>\n"
 				+ "<head>\n"
+				+ "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n"
 				+ "<script type=\"text/javascript\" src=\"https://www.google.com/jsapi\"></script>\n"
 				+ "<script type=\"text/javascript\">\n"
 				+ "google.load(\"visualization\", \"1\", {packages:[\"corechart\", \"table\"]});\n"
-				+ "google.setOnLoadCallback(drawCharts);\n"
-				+ "function drawCharts() {\n";
-
-
-		this.headBottom = "}\n"
+				+ "var sections = [];\n"
+				+ "var ready = false;\n"
+				+ "var cache = {};\n"
+				+ "var waiting = {};\n"
+				+ "function draw(section) {\n"
+				+ "if (ready) { section(); } else { sections.push(section); }\n"
+				+ "}\n"
+				+ "function load(id, callback) {\n"
+				+ "var inline = document.getElementById('data_' + id);\n"
+				+ "if (inline) { callback(JSON.parse(inline.text)); return; }\n"
+				+ "if (cache[id]) { callback(cache[id]); return; }\n"
+				+ "if (waiting[id]) { waiting[id].push(callback); return; }\n"
+				+ "waiting[id] = [callback];\n"
+				+ "var script = document.createElement('script');\n"
+				+ "script.src = '" + dataPath + "' + id + '.js';\n"
+				+ "document.getElementsByTagName('head')[0].appendChild(script);\n"
+				+ "}\n"
+				+ "function loaded(id, data) {\n"
+				+ "var callbacks = waiting[id] || [];\n"
+				+ "cache[id] = data;\n"
+				+ "delete waiting[id];\n"
+				+ "for (var i = 0; i < callbacks.length; i++) { callbacks[i](data); }\n"
+				+ "}\n"
+				+ "function columnChart(div, title, axis, columns, rows) {\n"
+				+ "var data = new google.visualization.DataTable();\n"
+				+ "data.addColumn('string', 'Service');\n"
+				+ "for (var i = 0; i < columns.length; i++) { data.addColumn('number', columns[i]); }\n"
+				+ "data.addRows(rows);\n"
+				+ "var options = {title: title, hAxis: {title: axis, titleTextStyle: {color: 'red'}}};\n"
+				+ "new google.visualization.ColumnChart(document.getElementById(div)).draw(data, options);\n"
+				+ "}\n"
+				+ "function expandable(id, first) {\n"
+				+ "var header = document.getElementById(id + '_header');\n"
+				+ "var body = document.getElementById(id);\n"
+				+ "var drawn = false;\n"
+				+ "header.onclick = function() {\n"
+				+ "var open = body.style.display == 'none';\n"
+				+ "body.style.display = open ? 'block' : 'none';\n"
+				+ "header.innerHTML = header.innerHTML.replace(open ? '[+]' : '[-]', open ? '[-]' : '[+]');\n"
+				+ "if (open && !drawn) { drawn = true; first(); }\n"
+				+ "};\n"
+				+ "}\n"
+				+ "function pagedTable(id, pages) {\n"
+				+ "var table = new google.visualization.Table(document.getElementById(id + '_table'));\n"
+				+ "var current = 0;\n"
+				+ "function show(page) {\n"
+				+ "current = page;\n"
+				+ "document.getElementById(id + '_page').innerHTML = (pages > 0 ? page + 1 : 0) + ' / ' + pages;\n"
+				+ "var data = new google.visualization.DataTable();\n"
+				+ "data.addColumn('number', 'Rater A');\n"
+				+ "data.addColumn('number', 'Rater B');\n"
+				+ "data.addColumn('number', 'Units');\n"
+				+ "data.addColumn('number', 'Fluency kappa');\n"
+				+ "data.addColumn('number', 'Adequacy kappa');\n"
+				+ "if (pages == 0) { table.draw(data, null); return; }\n"
+				+ "load(id + '_' + page, function(rows) {\n"
+				+ "if (page != current) { return; }\n"
+				+ "data.addRows(rows);\n"
+				+ "table.draw(data, null);\n"
+				+ "});\n"
+				+ "}\n"
+				+ "document.getElementById(id + '_prev').onclick = function() { if (current > 0) { show(current - 1); } };\n"
+				+ "document.getElementById(id + '_next').onclick = function() { if (current < pages - 1) { show(current + 1); } };\n"
+				+ "show(0);\n"
+				+ "}\n"
+				+ "google.setOnLoadCallback(function() {\n"
+				+ "ready = true;\n"
+				+ "for (var i = 0; i < sections.length; i++) { sections[i](); }\n"
+				+ "});\n"
 				+ "</script>\n"
-				+ "</head>\n";
-
-		this.bodyTop = "<body>\n";
-		this.bodyBottom = "</body>\n</html>";
+				+ "</head>\n"
+				+ "<body>\n");
 	}
 
 	/**
@@ -391,16 +586,16 @@ public class HTMLGenerator {
 		return this.getHTML();
 	}
 
-	public static void main(String[] args) {
-		HTMLGenerator gen = HTMLGenerator.getGenerator();
+	public static void main(String[] args) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream("debug.html"), "UTF-8"));
+		HTMLGenerator gen = new HTMLGenerator(out);
 
-		HashMap<String, HashMap<String, KappaRaters>> rater = new HashMap<String, HashMap<String, KappaRaters>>();
-		rater.put("google", new HashMap<String, KappaRaters>());
-		rater.put("bing", new HashMap<String, KappaRaters>());
+		HashMap<String, RaterPairMap> rater = new HashMap<String, RaterPairMap>();
+		rater.put("google", new RaterPairMap());
+		rater.put("bing", new RaterPairMap());
 
-		HashMap<String, KappaRaters> googleRaters = rater.get("google");
-		KappaRaters g12 = new KappaRaters(1, 2);
-		KappaRaters g13 = new KappaRaters(1, 3);
+		KappaRaters g12 = rater.get("google").getOrCreate(1, 2);
+		KappaRaters g13 = rater.get("bing").getOrCreate(1, 3);
 
 		g12.addAdequacy(2, 1);
 		g12.addAdequacy(3, 4);
@@ -575,23 +770,15 @@ public class HTMLGenerator {
 		g13.addFluency(3, 4);
 
 
-		googleRaters.put("1/2", g12);
-		//googleRaters.put("1/3", g13);
-
-		HashMap<String, KappaRaters> bingRaters = rater.get("bing");
-		//bingRaters.put("1/2", g12);
-		bingRaters.put("1/3", g13);
-
-		gen.generateKappaTable(rater);
-		gen.generateKappaAverageCharts(rater);
-
-		String html = gen.getHTML();
-
+		try {
+			gen.generateKappaTable(rater);
+			gen.generateKappaAverageCharts(rater);
+			gen.finish();
+		} finally {
+			out.close();
+		}
 
 		try {
-			FileOutputStream fos = new FileOutputStream(new File("debug.html"));
-			fos.write(html.getBytes());
-			fos.close();
 			Desktop.getDesktop().open(new File("debug.html"));
 		} catch (IOException e) {
 		}
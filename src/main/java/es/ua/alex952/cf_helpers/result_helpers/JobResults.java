@@ -0,0 +1,181 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import java.util.HashMap;
+
+/**
+ * Everything measured from the results of a job: the kappa of every pair of
+ * raters, the agreement among all the raters and the average scores of each
+ * service. It's fed unit by unit, whether the units come from the server or
+ * from a {@link JudgmentStore}.
+ *
+ * @author alex952
+ */
+public class JobResults {
+
+	private String[] services;
+	private boolean pairwiseKappa;
+	private HashMap<String, RaterPairMap> raters = new HashMap<String, RaterPairMap>();
+	private HashMap<String, MultiRaterAgreement> agreement = new HashMap<String, MultiRaterAgreement>();
+	private ScoreAggregator scores;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param services Names of the services, in the order used by the units
+	 * @param pairwiseKappa Whether the kappa of every pair of raters is
+	 * computed
+	 */
+	public JobResults(String[] services, boolean pairwiseKappa) {
+		this.services = services;
+		this.pairwiseKappa = pairwiseKappa;
+		this.scores = new ScoreAggregator(services);
+
+		for (String service : services) {
+			this.raters.put(service, new RaterPairMap());
+			this.agreement.put(service, new MultiRaterAgreement());
+		}
+	}
+
+	/**
+	 * Adds the judgments of a unit.
+	 *
+	 * @param unit The judgments
+	 */
+	public void addUnit(UnitJudgments unit) {
+		this.accumulate(unit, true);
+	}
+
+	/**
+	 * Removes the judgments of a unit added before, so the unit can be added
+	 * again with more judgments.
+	 *
+	 * @param unit The judgments, as they were added
+	 */
+	public void removeUnit(UnitJudgments unit) {
+		this.accumulate(unit, false);
+	}
+
+	private void accumulate(UnitJudgments unit, boolean add) {
+		int n = unit.size();
+		int[] workers = unit.getWorkers();
+
+		for (int k = 0; k < services.length; k++) {
+			int[] fluency = unit.getFluency(k);
+			int[] adequacy = unit.getAdequacy(k);
+
+			//Agreement among all the raters, in one pass over the judgments
+			if (add) {
+				agreement.get(services[k]).addUnit(fluency, adequacy, n);
+			} else {
+				agreement.get(services[k]).removeUnit(fluency, adequacy, n);
+			}
+
+			if (!this.pairwiseKappa) {
+				continue;
+			}
+
+			RaterPairMap ratersService = raters.get(services[k]);
+
+			//Every unordered pair of judgments once, added in both
+			//orientations as it has always been done: the tables are
+			//symmetric, so the kappa of a pair doesn't depend on which of
+			//its raters is A
+			for (int i = 0; i < n; i++) {
+				for (int j = i + 1; j < n; j++) {
+					KappaRaters kr = ratersService.getOrCreate(workers[i], workers[j]);
+
+					if (add) {
+						kr.addAdequacy(adequacy[i], adequacy[j]);
+						kr.addAdequacy(adequacy[j], adequacy[i]);
+						kr.addFluency(fluency[i], fluency[j]);
+						kr.addFluency(fluency[j], fluency[i]);
+					} else {
+						kr.removeAdequacy(adequacy[i], adequacy[j]);
+						kr.removeAdequacy(adequacy[j], adequacy[i]);
+						kr.removeFluency(fluency[i], fluency[j]);
+						kr.removeFluency(fluency[j], fluency[i]);
+
+						//A pair left with no units in common is dropped, as it
+						//wouldn't exist had the unit been added this way first
+						if (kr.getJudgments() == 0) {
+							ratersService.remove(workers[i], workers[j]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the average scores of a unit.
+	 *
+	 * @param fluency Average fluency of each service
+	 * @param adequacy Average adequacy of each service
+	 */
+	public void addScores(double[] fluency, double[] adequacy) {
+		this.scores.addUnit(fluency, adequacy);
+	}
+
+	/**
+	 * Removes the average scores of a unit added before.
+	 *
+	 * @param fluency Average fluency of each service
+	 * @param adequacy Average adequacy of each service
+	 */
+	public void removeScores(double[] fluency, double[] adequacy) {
+		this.scores.removeUnit(fluency, adequacy);
+	}
+
+	public String[] getServices() {
+		return services;
+	}
+
+	public boolean isPairwiseKappa() {
+		return pairwiseKappa;
+	}
+
+	/**
+	 * Pairs of raters of each service.
+	 *
+	 * @return The pairs, by service
+	 */
+	public HashMap<String, RaterPairMap> getRaters() {
+		return raters;
+	}
+
+	/**
+	 * Agreement among all the raters of each service.
+	 *
+	 * @return The agreement, by service
+	 */
+	public HashMap<String, MultiRaterAgreement> getAgreement() {
+		return agreement;
+	}
+
+	/**
+	 * Average scores of the services.
+	 *
+	 * @return The scores
+	 */
+	public ScoreAggregator getScores() {
+		return scores;
+	}
+}
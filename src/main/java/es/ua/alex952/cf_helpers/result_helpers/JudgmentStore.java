@@ -0,0 +1,567 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local store of the raw results of a job, so they can be analyzed again
+ * without downloading them. It keeps the judgments of every unit and its
+ * aggregated scores, as they were read from the server.
+ *
+ * The store is an append-only binary file: a header with the job id and
+ * its services, followed by records made of a type, their length and their
+ * content:
+ * <ul>
+ * <li>unit: unit id, source sentence, translation of each service, worker
+ * of each judgment and the fluency and adequacy scores of each service</li>
+ * <li>scores: unit id, average fluency and adequacy of each service</li>
+ * </ul>
+ * A unit stored again replaces the former record of the same type, unless
+ * its judgments are the same, which are then not written again. The
+ * file is indexed by unit and by worker when it's opened, and a record left
+ * half written by an interruption is discarded.
+ *
+ * @author alex952
+ */
+public class JudgmentStore implements Closeable {
+
+	private static final int MAGIC = 0x43545331;
+	private static final byte UNIT = 1;
+	private static final byte SCORES = 2;
+
+	private final RandomAccessFile file;
+	private final String jobId;
+	private final String[] services;
+
+	/**
+	 * Records by unit, in the order the units were first stored
+	 */
+	private final LinkedHashMap<String, Entry> units = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Units judged by each worker
+	 */
+	private final HashMap<Integer, Set<String>> workers = new HashMap<Integer, Set<String>>();
+
+	private static class Entry {
+
+		private long unit = -1;
+		private int judgments = 0;
+		private int[] workers = null;
+		private byte[] digest = null;
+		private long scores = -1;
+	}
+
+	/**
+	 * Digest of the unit records, to tell if a unit changed without reading
+	 * its record
+	 */
+	private final MessageDigest digest;
+
+	private JudgmentStore(RandomAccessFile file, String jobId, String[] services) {
+		try {
+			this.digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//Every JVM has to provide it
+			throw new IllegalStateException(e);
+		}
+		this.file = file;
+		this.jobId = jobId;
+		this.services = services;
+	}
+
+	/**
+	 * Opens the store of a job, creating it if it doesn't exist.
+	 *
+	 * @param path Path of the store
+	 * @param jobId Id of the job
+	 * @param services Names of the services of the job
+	 * @return The store
+	 * @throws IOException If the store belongs to another job or services
+	 */
+	public static JudgmentStore open(File path, String jobId, String[] services) throws IOException {
+		if (path.exists() && path.length() > 0) {
+			JudgmentStore store = open(path);
+
+			if (!store.jobId.equals(jobId) || !Arrays.equals(store.services, services)) {
+				store.close();
+				throw new IOException("The store " + path + " belongs to another job or services");
+			}
+
+			return store;
+		}
+
+		if (path.getParentFile() != null) {
+			path.getParentFile().mkdirs();
+		}
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(header);
+
+			dos.writeInt(MAGIC);
+			dos.writeUTF(jobId);
+			dos.writeInt(services.length);
+			for (String service : services) {
+				dos.writeUTF(service);
+			}
+
+			file.setLength(0);
+			file.write(header.toByteArray());
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+
+		return new JudgmentStore(file, jobId, services.clone());
+	}
+
+	/**
+	 * Opens an existing store.
+	 *
+	 * @param path Path of the store
+	 * @return The store
+	 * @throws IOException If the file isn't a store
+	 */
+	public static JudgmentStore open(File path) throws IOException {
+		if (!path.exists()) {
+			throw new FileNotFoundException("There is no store " + path);
+		}
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			if (file.readInt() != MAGIC) {
+				throw new IOException(path + " is not a judgments store");
+			}
+
+			String jobId = file.readUTF();
+			String[] services = new String[file.readInt()];
+			for (int i = 0; i < services.length; i++) {
+				services[i] = file.readUTF();
+			}
+
+			JudgmentStore store = new JudgmentStore(file, jobId, services);
+			long position = file.getFilePointer();
+
+			//The stream shares the position of the file, right after the header
+			store.index(new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD()))), position);
+
+			return store;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the records from a position on, indexing them. The file is cut
+	 * after the last complete record.
+	 */
+	private void index(DataInputStream in, long position) throws IOException {
+		long end = this.file.length();
+
+		while (position < end) {
+			byte type;
+			byte[] content;
+
+			try {
+				type = in.readByte();
+				content = new byte[in.readInt()];
+				in.readFully(content);
+			} catch (EOFException e) {
+				break;
+			}
+
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(content));
+			String unitId = record.readUTF();
+			Entry entry = this.entry(unitId);
+
+			if (type == UNIT) {
+				UnitJudgments unit = this.readUnit(record);
+
+				entry.unit = position;
+				entry.judgments = unit.size();
+				entry.workers = unit.getWorkers();
+				entry.digest = this.digest.digest(content);
+			} else if (type == SCORES) {
+				entry.scores = position;
+			}
+
+			position += 5 + content.length;
+		}
+
+		this.file.setLength(position);
+
+		//Only the last record of each unit tells who judged it, and the
+		//units are indexed in the order of those records, as when stored
+		List<Map.Entry<String, Entry>> judged = new ArrayList<Map.Entry<String, Entry>>();
+		for (Map.Entry<String, Entry> unit : this.units.entrySet()) {
+			if (unit.getValue().unit >= 0) {
+				judged.add(unit);
+			}
+		}
+		Collections.sort(judged, new Comparator<Map.Entry<String, Entry>>() {
+
+			@Override
+			public int compare(Map.Entry<String, Entry> e1, Map.Entry<String, Entry> e2) {
+				return e1.getValue().unit < e2.getValue().unit ? -1 : (e1.getValue().unit > e2.getValue().unit ? 1 : 0);
+			}
+		});
+		for (Map.Entry<String, Entry> unit : judged) {
+			this.indexWorkers(unit.getKey(), null, unit.getValue().workers);
+		}
+	}
+
+	/**
+	 * Id of the job of the store.
+	 *
+	 * @return The id
+	 */
+	public String getJobId() {
+		return jobId;
+	}
+
+	/**
+	 * Names of the services, in the order used by the stored units.
+	 *
+	 * @return The names
+	 */
+	public String[] getServices() {
+		return services.clone();
+	}
+
+	/**
+	 * Ids of the units stored, in the order they were first stored.
+	 *
+	 * @return The ids
+	 */
+	public synchronized List<String> getUnitIds() {
+		return new ArrayList<String>(this.units.keySet());
+	}
+
+	/**
+	 * Ids of the units judged by a worker.
+	 *
+	 * @param worker Id of the worker
+	 * @return The ids, in the order their judgments were last stored
+	 */
+	public synchronized List<String> getUnitsOfWorker(int worker) {
+		Set<String> ids = this.workers.get(worker);
+
+		if (ids == null) {
+			return Collections.emptyList();
+		}
+
+		return new ArrayList<String>(ids);
+	}
+
+	/**
+	 * Number of judgments stored of a unit.
+	 *
+	 * @param unitId Id of the unit
+	 * @return The number of judgments, 0 if it isn't stored
+	 */
+	public synchronized int getJudgments(String unitId) {
+		Entry entry = this.units.get(unitId);
+
+		return entry == null ? 0 : entry.judgments;
+	}
+
+	/**
+	 * Stores the judgments of a unit, replacing the ones stored before.
+	 * Nothing is written if the same judgments are already stored.
+	 *
+	 * @param unitId Id of the unit
+	 * @param unit The judgments
+	 * @return Whether the judgments were written
+	 * @throws IOException
+	 */
+	public synchronized boolean putUnit(String unitId, UnitJudgments unit) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream dos = new DataOutputStream(bytes);
+		int n = unit.size();
+
+		dos.writeUTF(unitId);
+		writeString(dos, unit.getLo());
+		for (int k = 0; k < services.length; k++) {
+			writeString(dos, unit.getTranslation(k));
+		}
+
+		dos.writeInt(n);
+		int[] unitWorkers = unit.getWorkers();
+		for (int i = 0; i < n; i++) {
+			dos.writeInt(unitWorkers[i]);
+		}
+
+		for (int k = 0; k < services.length; k++) {
+			int[] fluency = unit.getFluency(k);
+			int[] adequacy = unit.getAdequacy(k);
+
+			for (int i = 0; i < n; i++) {
+				dos.writeByte(fluency[i]);
+			}
+			for (int i = 0; i < n; i++) {
+				dos.writeByte(adequacy[i]);
+			}
+		}
+
+		byte[] unitDigest = this.digest.digest(bytes.toByteArray());
+		Entry entry = this.entry(unitId);
+
+		if (Arrays.equals(unitDigest, entry.digest)) {
+			return false;
+		}
+
+		entry.unit = this.append(UNIT, bytes);
+		entry.judgments = n;
+		entry.digest = unitDigest;
+		this.indexWorkers(unitId, entry.workers, unitWorkers);
+		entry.workers = unitWorkers;
+
+		return true;
+	}
+
+	/**
+	 * Reads the judgments of a unit.
+	 *
+	 * @param unitId Id of the unit
+	 * @return The judgments or null if they aren't stored
+	 * @throws IOException
+	 */
+	public synchronized UnitJudgments getUnit(String unitId) throws IOException {
+		Entry entry = this.units.get(unitId);
+
+		if (entry == null || entry.unit < 0) {
+			return null;
+		}
+
+		DataInputStream record = this.read(entry.unit);
+		record.readUTF();
+
+		return this.readUnit(record);
+	}
+
+	/**
+	 * Stores the aggregated scores of a unit, replacing the ones stored
+	 * before.
+	 *
+	 * @param unitId Id of the unit
+	 * @param fluency Average fluency of each service
+	 * @param adequacy Average adequacy of each service
+	 * @throws IOException
+	 */
+	public synchronized void putScores(String unitId, double[] fluency, double[] adequacy) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * services.length + 16);
+		DataOutputStream dos = new DataOutputStream(bytes);
+
+		dos.writeUTF(unitId);
+		for (int k = 0; k < services.length; k++) {
+			dos.writeDouble(fluency[k]);
+			dos.writeDouble(adequacy[k]);
+		}
+
+		this.entry(unitId).scores = this.append(SCORES, bytes);
+	}
+
+	/**
+	 * Reads the aggregated scores of a unit.
+	 *
+	 * @param unitId Id of the unit
+	 * @return The average fluency and adequacy of each service (in this
+	 * order), or null if they aren't stored
+	 * @throws IOException
+	 */
+	public synchronized double[][] getScores(String unitId) throws IOException {
+		Entry entry = this.units.get(unitId);
+
+		if (entry == null || entry.scores < 0) {
+			return null;
+		}
+
+		DataInputStream record = this.read(entry.scores);
+		record.readUTF();
+
+		double[][] scores = new double[2][services.length];
+		for (int k = 0; k < services.length; k++) {
+			scores[0][k] = record.readDouble();
+			scores[1][k] = record.readDouble();
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Writes the stored records to the disk.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		this.file.getFD().sync();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.file.close();
+	}
+
+	private Entry entry(String unitId) {
+		Entry entry = this.units.get(unitId);
+
+		if (entry == null) {
+			entry = new Entry();
+			this.units.put(unitId, entry);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Moves a unit in the index of workers from the workers of its former
+	 * record to the ones of its new record.
+	 */
+	private void indexWorkers(String unitId, int[] former, int[] unitWorkers) {
+		if (former != null) {
+			for (int worker : former) {
+				Set<String> ids = this.workers.get(worker);
+
+				if (ids != null) {
+					ids.remove(unitId);
+					if (ids.isEmpty()) {
+						this.workers.remove(worker);
+					}
+				}
+			}
+		}
+
+		if (unitWorkers == null) {
+			return;
+		}
+
+		for (int i = 0; i < unitWorkers.length; i++) {
+			Set<String> ids = this.workers.get(unitWorkers[i]);
+
+			if (ids == null) {
+				ids = new LinkedHashSet<String>();
+				this.workers.put(unitWorkers[i], ids);
+			}
+			ids.add(unitId);
+		}
+	}
+
+	private UnitJudgments readUnit(DataInputStream record) throws IOException {
+		String lo = readString(record);
+		String[] translations = new String[services.length];
+		for (int k = 0; k < services.length; k++) {
+			translations[k] = readString(record);
+		}
+
+		int n = record.readInt();
+		int[] unitWorkers = new int[n];
+		for (int i = 0; i < n; i++) {
+			unitWorkers[i] = record.readInt();
+		}
+
+		int[][] fluency = new int[services.length][n];
+		int[][] adequacy = new int[services.length][n];
+		for (int k = 0; k < services.length; k++) {
+			for (int i = 0; i < n; i++) {
+				fluency[k][i] = record.readByte();
+			}
+			for (int i = 0; i < n; i++) {
+				adequacy[k][i] = record.readByte();
+			}
+		}
+
+		return new UnitJudgments(lo, translations, unitWorkers, fluency, adequacy);
+	}
+
+	/**
+	 * Appends a record at the end of the file.
+	 *
+	 * @return The position of the record
+	 */
+	private long append(byte type, ByteArrayOutputStream content) throws IOException {
+		long position = this.file.length();
+		ByteArrayOutputStream record = new ByteArrayOutputStream(content.size() + 5);
+		DataOutputStream dos = new DataOutputStream(record);
+
+		dos.writeByte(type);
+		dos.writeInt(content.size());
+		content.writeTo(dos);
+
+		this.file.seek(position);
+		this.file.write(record.toByteArray());
+
+		return position;
+	}
+
+	/**
+	 * Reads the content of the record at a position.
+	 */
+	private DataInputStream read(long position) throws IOException {
+		this.file.seek(position);
+		this.file.readByte();
+
+		byte[] content = new byte[this.file.readInt()];
+		this.file.readFully(content);
+
+		return new DataInputStream(new ByteArrayInputStream(content));
+	}
+
+	/**
+	 * Strings of any length (writeUTF is limited to 64KB), null allowed.
+	 */
+	private static void writeString(DataOutputStream dos, String s) throws IOException {
+		if (s == null) {
+			dos.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = s.getBytes("UTF-8");
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, "UTF-8");
+	}
+}
@@ -18,29 +18,33 @@
  */
 package es.ua.alex952.cf_helpers.result_helpers;
 
-import java.util.ArrayList;
-
 /**
+ * Agreement information about a pair of raters: one table of rates for
+ * each feature (fluency and adequacy) and the Kappa factor derived from it.
+ * 
+ * The tables keep their row and column sums and their diagonal up to date
+ * as judgments are added, so the Kappa factor is computed without walking
+ * the table, and it's cached until another judgment is added.
  *
  * @author alex952
  */
 public class KappaRaters {
 	
-	private static Integer N_RATES = 6;
+	private static final int N_RATES = 6;
 	
-	private Integer raterA;
-	private Integer raterB;
+	private int raterA;
+	private int raterB;
 
-	public Integer getRaterA() {
+	public int getRaterA() {
 		return raterA;
 	}
 
-	public Integer getRaterB() {
+	public int getRaterB() {
 		return raterB;
 	}
 	
-	private int[][] flucencyRates;
-	private int[][] adecuacyRates;
+	private RatesTable flucencyRates;
+	private RatesTable adecuacyRates;
 
 	/**
 	 * Main constructor.
@@ -48,12 +52,12 @@ public class KappaRaters {
 	 * @param raterA First part of the couple of raters (order matters)
 	 * @param raterB Last part of the couple of raters (order matters) 
 	 */
-	public KappaRaters(Integer raterA, Integer raterB) {
+	public KappaRaters(int raterA, int raterB) {
 		this.raterA = raterA;
 		this.raterB = raterB;
 		
-		this.flucencyRates = new int[N_RATES][N_RATES];
-		this.adecuacyRates = new int[N_RATES][N_RATES];
+		this.flucencyRates = new RatesTable();
+		this.adecuacyRates = new RatesTable();
 	}
 	
 	
@@ -63,18 +67,38 @@ public class KappaRaters {
 	 * @param rateA What first has rated.
 	 * @param rateB What last has rated.
 	 */
-	public void addFluency(Integer rateA, Integer rateB) {
-		this.flucencyRates[rateA][rateB]++;
+	public void addFluency(int rateA, int rateB) {
+		this.flucencyRates.add(rateA, rateB);
 	}
 	
 	/**
-	 * Add one more judgment to fluency rate table.
+	 * Add one more judgment to adequacy rate table.
 	 * 
 	 * @param rateA rateA What first has rated.
 	 * @param rateB  rateB What last has rated.
 	 */
-	public void addAdequacy(Integer rateA, Integer rateB) {
-		this.adecuacyRates[rateA][rateB]++;
+	public void addAdequacy(int rateA, int rateB) {
+		this.adecuacyRates.add(rateA, rateB);
+	}
+	
+	/**
+	 * Removes a judgment added before to fluency rate table.
+	 * 
+	 * @param rateA What first has rated.
+	 * @param rateB What last has rated.
+	 */
+	public void removeFluency(int rateA, int rateB) {
+		this.flucencyRates.remove(rateA, rateB);
+	}
+	
+	/**
+	 * Removes a judgment added before to adequacy rate table.
+	 * 
+	 * @param rateA What first has rated.
+	 * @param rateB What last has rated.
+	 */
+	public void removeAdequacy(int rateA, int rateB) {
+		this.adecuacyRates.remove(rateA, rateB);
 	}
 	
 	/**
@@ -84,8 +108,8 @@ public class KappaRaters {
 	 * @param rateB
 	 * @return 
 	 */
-	public Integer getFluencyRate(Integer rateA, Integer rateB) {
-		return this.flucencyRates[rateA][rateB];
+	public int getFluencyRate(int rateA, int rateB) {
+		return this.flucencyRates.rates[rateA][rateB];
 	}
 	
 	/**
@@ -95,66 +119,18 @@ public class KappaRaters {
 	 * @param rateB
 	 * @return 
 	 */
-	public Integer getAdequacyRate(Integer rateA, Integer rateB) {
-		return this.adecuacyRates[rateA][rateB];
+	public int getAdequacyRate(int rateA, int rateB) {
+		return this.adecuacyRates.rates[rateA][rateB];
 	}
 	
 	/**
-	 * Gets the kappa factor from the raters' matrix
+	 * Number of units judged by both raters. Each unit is in the tables 
+	 * twice, once in each orientation of the pair.
 	 * 
-	 * @param ratesTable The rater's matrix
-	 * @return Kappa factor derived from the table
+	 * @return The number of units in common
 	 */
-	private Double getKappa(int [][] ratesTable) {
-		//Total sum of table
-		Integer total = 0;
-		
-		//Stores the rows' sums
-		ArrayList<Double> pe1 = new ArrayList<Double>();
-		//Stores the cols' sums
-		ArrayList<Double> pe2 = new ArrayList<Double>();
-		
-		//Used to collect total sum and row sum
-		for (int i = 0; i < ratesTable.length; i++) {
-			int row = 0;
-			
-			for (int j = 0; j < ratesTable[i].length; j++) {
-				total += ratesTable[i][j];
-				
-				row += ratesTable[i][j];
-			}
-			
-			pe1.add(new Double(row));
-			row = 0;
-		}
-		
-		//Calculus of P(a)
-		Double pa = 0.0;
-		for(int i = 0; i < ratesTable.length; i++) {
-			pa += ratesTable[i][i];
-		}
-		pa /= total;
-		
-		//Used to collect columns' sum
-		for (int i = 0; i < ratesTable.length; i++) {
-			int col = 0;
-			
-			for (int j = 0; j < ratesTable[i].length; j++) {
-				col += ratesTable[j][i];
-			}
-			
-			pe2.add(new Double(col));
-			col = 0;
-		}
-		
-		//Calculus of P(e)
-		Double pe = 0.0;
-		for (int i = 0; i < pe1.size(); i++) {
-			pe += pe1.get(i) / total * pe2.get(i) / total;
-		}
-		
-		//Return the real Kappa P(a) - P(e) / 1.0 - P(e)
-		return (pa - pe) / (1.0 - pe);
+	public int getJudgments() {
+		return Math.max(this.flucencyRates.total, this.adecuacyRates.total) / 2;
 	}
 	
 	/**
@@ -162,27 +138,17 @@ public class KappaRaters {
 	 * 
 	 * @return Fluency's Kappa factor
 	 */
-	public Double getFluencyKappa() {
-		return this.getKappa(this.flucencyRates);
+	public double getFluencyKappa() {
+		return this.flucencyRates.getKappa();
 	}
 	
 	/**
 	 * Returns the Kappa factor for the Adequacy feature.
 	 * 
-	 * @return Fluency's Kappa factor
+	 * @return Adequacy's Kappa factor
 	 */
-	public Double getAdequacyKappa() {
-		return this.getKappa(this.flucencyRates);
-	}
-	
-	private Integer getRatings(int[] ratings) {
-		Integer res = 0;
-		
-		for (Integer rate: ratings) {
-			res += rate;
-		}
-		
-		return res;
+	public double getAdequacyKappa() {
+		return this.adecuacyRates.getKappa();
 	}
 	
 	/**
@@ -191,8 +157,8 @@ public class KappaRaters {
 	 * @param score The score that we want to know
 	 * @return Total score given by the rater A
 	 */
-	public Integer getRatingsFluencyA(int score) {
-		return this.getRatings(this.flucencyRates[score]);
+	public int getRatingsFluencyA(int score) {
+		return this.flucencyRates.rows[score];
 	}
 	
 	/**
@@ -201,10 +167,8 @@ public class KappaRaters {
 	 * @param score The score that we want to know
 	 * @return Total score given by the rater A
 	 */
-	public Integer getRatingsAdequacyA(int score) {
-		
-		
-		return this.getRatings(this.adecuacyRates[score]);
+	public int getRatingsAdequacyA(int score) {
+		return this.adecuacyRates.rows[score];
 	}
 	
 	/**
@@ -213,14 +177,8 @@ public class KappaRaters {
 	 * @param score The score that we want to know
 	 * @return Total score given by the rater B
 	 */
-	public Integer getRatingsFluencyB(int score) {
-		int[] column = new int[this.flucencyRates.length];
-		
-		for (int i = 0; i < flucencyRates.length; i++) {
-			column[i] = this.flucencyRates[i][score];
-		}
-		
-		return this.getRatings(column);
+	public int getRatingsFluencyB(int score) {
+		return this.flucencyRates.cols[score];
 	}
 	
 	/**
@@ -229,13 +187,69 @@ public class KappaRaters {
 	 * @param score The score that we want to know
 	 * @return Total score given by the rater B
 	 */
-	public Integer getRatingsAdequacyB(int score) {
-		int[] column = new int[this.adecuacyRates.length];
+	public int getRatingsAdequacyB(int score) {
+		return this.adecuacyRates.cols[score];
+	}
+	
+	/**
+	 * Table of rates of one feature with its sums kept up to date.
+	 */
+	private static class RatesTable {
 		
-		for (int i = 0; i < adecuacyRates.length; i++) {
-			column[i] = this.adecuacyRates[i][score];
+		private int[][] rates = new int[N_RATES][N_RATES];
+		private int[] rows = new int[N_RATES];
+		private int[] cols = new int[N_RATES];
+		private int diagonal = 0;
+		private int total = 0;
+		
+		private double kappa = Double.NaN;
+		private boolean changed = true;
+		
+		private void add(int rateA, int rateB) {
+			this.accumulate(rateA, rateB, 1);
+		}
+		
+		private void remove(int rateA, int rateB) {
+			this.accumulate(rateA, rateB, -1);
 		}
 		
-		return this.getRatings(column);
+		private void accumulate(int rateA, int rateB, int sign) {
+			this.rates[rateA][rateB] += sign;
+			this.rows[rateA] += sign;
+			this.cols[rateB] += sign;
+			this.total += sign;
+			
+			if (rateA == rateB) {
+				this.diagonal += sign;
+			}
+			
+			this.changed = true;
+		}
+		
+		/**
+		 * Gets the kappa factor from the raters' matrix
+		 * 
+		 * @return Kappa factor derived from the table
+		 */
+		private double getKappa() {
+			if (this.changed) {
+				double t = this.total;
+				
+				//Calculus of P(a)
+				double pa = this.diagonal / t;
+				
+				//Calculus of P(e)
+				double pe = 0.0;
+				for (int i = 0; i < N_RATES; i++) {
+					pe += (this.rows[i] / t) * (this.cols[i] / t);
+				}
+				
+				//Real Kappa P(a) - P(e) / 1.0 - P(e)
+				this.kappa = (pa - pe) / (1.0 - pe);
+				this.changed = false;
+			}
+			
+			return this.kappa;
+		}
 	}
 }
@@ -0,0 +1,227 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+/**
+ * Agreement among all the raters of a service, for fluency and adequacy,
+ * measured with Fleiss' kappa and Krippendorff's alpha (ordinal metric).
+ *
+ * Both measures are accumulated unit by unit from the number of raters that
+ * gave each score, so every unit is processed once, in time linear in the
+ * number of its judgments, instead of enumerating every pair of raters.
+ *
+ * @author alex952
+ */
+public class MultiRaterAgreement {
+
+	private static final int N_RATES = 6;
+
+	private AgreementTable fluency = new AgreementTable();
+	private AgreementTable adequacy = new AgreementTable();
+
+	/**
+	 * Adds the judgments of one unit.
+	 *
+	 * @param fluencyScores Fluency score given by each rater
+	 * @param adequacyScores Adequacy score given by each rater
+	 * @param n Number of raters of the unit (the scores used from the arrays)
+	 */
+	public void addUnit(int[] fluencyScores, int[] adequacyScores, int n) {
+		this.fluency.addUnit(fluencyScores, n);
+		this.adequacy.addUnit(adequacyScores, n);
+	}
+
+	/**
+	 * Removes the judgments of one unit added before, so the unit can be
+	 * added again with more judgments.
+	 *
+	 * @param fluencyScores Fluency score given by each rater
+	 * @param adequacyScores Adequacy score given by each rater
+	 * @param n Number of raters of the unit (the scores used from the arrays)
+	 */
+	public void removeUnit(int[] fluencyScores, int[] adequacyScores, int n) {
+		this.fluency.removeUnit(fluencyScores, n);
+		this.adequacy.removeUnit(adequacyScores, n);
+	}
+
+	/**
+	 * Returns the Fleiss' kappa for the Fluency feature.
+	 *
+	 * @return Fluency's Fleiss' kappa
+	 */
+	public double getFluencyFleissKappa() {
+		return this.fluency.getFleissKappa();
+	}
+
+	/**
+	 * Returns the Fleiss' kappa for the Adequacy feature.
+	 *
+	 * @return Adequacy's Fleiss' kappa
+	 */
+	public double getAdequacyFleissKappa() {
+		return this.adequacy.getFleissKappa();
+	}
+
+	/**
+	 * Returns the Krippendorff's alpha for the Fluency feature.
+	 *
+	 * @return Fluency's Krippendorff's alpha
+	 */
+	public double getFluencyAlpha() {
+		return this.fluency.getAlpha();
+	}
+
+	/**
+	 * Returns the Krippendorff's alpha for the Adequacy feature.
+	 *
+	 * @return Adequacy's Krippendorff's alpha
+	 */
+	public double getAdequacyAlpha() {
+		return this.adequacy.getAlpha();
+	}
+
+	/**
+	 * Number of units with two or more raters added so far.
+	 *
+	 * @return The number of units
+	 */
+	public int getUnits() {
+		return this.fluency.units;
+	}
+
+	/**
+	 * Accumulated agreement of one feature.
+	 */
+	private static class AgreementTable {
+
+		/**
+		 * Units with two or more raters
+		 */
+		private int units = 0;
+
+		/**
+		 * Sum of the agreement of every unit (Fleiss)
+		 */
+		private double agreement = 0.0;
+
+		/**
+		 * Number of ratings of each score (Fleiss)
+		 */
+		private long[] totals = new long[N_RATES];
+		private long ratings = 0;
+
+		/**
+		 * Coincidence matrix (Krippendorff)
+		 */
+		private double[][] coincidences = new double[N_RATES][N_RATES];
+
+		/**
+		 * Buffer for the scores count of a unit
+		 */
+		private int[] counts = new int[N_RATES];
+
+		private void addUnit(int[] scores, int n) {
+			this.accumulate(scores, n, 1);
+		}
+
+		private void removeUnit(int[] scores, int n) {
+			this.accumulate(scores, n, -1);
+		}
+
+		private void accumulate(int[] scores, int n, int sign) {
+			//Units rated only once don't tell anything about agreement
+			if (n < 2) {
+				return;
+			}
+
+			for (int c = 0; c < N_RATES; c++) {
+				this.counts[c] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				this.counts[scores[i]]++;
+			}
+
+			double pairs = 0.0;
+			for (int c = 0; c < N_RATES; c++) {
+				int nc = this.counts[c];
+
+				pairs += nc * (nc - 1);
+				this.totals[c] += sign * nc;
+
+				if (nc == 0) {
+					continue;
+				}
+
+				for (int k = 0; k < N_RATES; k++) {
+					int nk = c == k ? nc - 1 : this.counts[k];
+
+					this.coincidences[c][k] += sign * (double) nc * nk / (n - 1);
+				}
+			}
+
+			this.agreement += sign * pairs / ((double) n * (n - 1));
+			this.ratings += sign * n;
+			this.units += sign;
+		}
+
+		private double getFleissKappa() {
+			double pa = this.agreement / this.units;
+			double pe = 0.0;
+
+			for (int c = 0; c < N_RATES; c++) {
+				double p = (double) this.totals[c] / this.ratings;
+				pe += p * p;
+			}
+
+			return (pa - pe) / (1.0 - pe);
+		}
+
+		private double getAlpha() {
+			double[] marginals = new double[N_RATES];
+			double n = 0.0;
+
+			for (int c = 0; c < N_RATES; c++) {
+				for (int k = 0; k < N_RATES; k++) {
+					marginals[c] += this.coincidences[c][k];
+				}
+
+				n += marginals[c];
+			}
+
+			double observed = 0.0;
+			double expected = 0.0;
+
+			for (int c = 0; c < N_RATES; c++) {
+				double between = 0.0;
+
+				for (int k = c + 1; k < N_RATES; k++) {
+					//Ordinal metric: scores between c and k, halving the ends
+					between += marginals[k - 1];
+					double d = between + marginals[k] / 2.0 - marginals[c] / 2.0;
+					double delta = d * d;
+
+					observed += 2 * this.coincidences[c][k] * delta;
+					expected += 2 * marginals[c] * marginals[k] * delta;
+				}
+			}
+
+			return 1.0 - (n - 1) * observed / expected;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Container of the {@link KappaRaters} of every pair of raters. The pair
+ * is stored under a primitive long made of the two worker ids (the lower
+ * id in the high half), in an open addressing table with linear probing,
+ * so neither keys nor wrappers are allocated when looking a pair up.
+ *
+ * The order of the workers doesn't matter: (a, b) and (b, a) are the same
+ * pair, and its {@link KappaRaters} has the lower id as rater A.
+ *
+ * @author alex952
+ */
+public class RaterPairMap implements Iterable<KappaRaters> {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * More units in common first, then by raters
+	 */
+	private static final Comparator<KappaRaters> BY_JUDGMENTS = new Comparator<KappaRaters>() {
+
+		@Override
+		public int compare(KappaRaters k1, KappaRaters k2) {
+			if (k1.getJudgments() != k2.getJudgments()) {
+				return k1.getJudgments() > k2.getJudgments() ? -1 : 1;
+			}
+			if (k1.getRaterA() != k2.getRaterA()) {
+				return k1.getRaterA() < k2.getRaterA() ? -1 : 1;
+			}
+			if (k1.getRaterB() != k2.getRaterB()) {
+				return k1.getRaterB() < k2.getRaterB() ? -1 : 1;
+			}
+
+			return 0;
+		}
+	};
+
+	private long[] keys;
+	private KappaRaters[] values;
+	private int size = 0;
+	private int mask;
+
+	/**
+	 * Main constructor.
+	 */
+	public RaterPairMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor with the expected number of pairs.
+	 *
+	 * @param expected Number of pairs expected
+	 */
+	public RaterPairMap(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2) {
+			capacity <<= 1;
+		}
+
+		this.keys = new long[capacity];
+		this.values = new KappaRaters[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Packs a pair of workers in one key.
+	 *
+	 * @param workerA One of the workers
+	 * @param workerB The other worker
+	 * @return The key of the pair
+	 */
+	public static long key(int workerA, int workerB) {
+		int left = Math.min(workerA, workerB);
+		int right = Math.max(workerA, workerB);
+
+		return ((long) left << 32) | (right & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Gets the raters of a pair.
+	 *
+	 * @param workerA One of the workers
+	 * @param workerB The other worker
+	 * @return The raters of the pair or null if they haven't rated together
+	 */
+	public KappaRaters get(int workerA, int workerB) {
+		long key = key(workerA, workerB);
+		int i = this.slot(key);
+
+		return this.values[i];
+	}
+
+	/**
+	 * Checks if a pair of workers is in the map.
+	 *
+	 * @param workerA One of the workers
+	 * @param workerB The other worker
+	 * @return Whether the pair is present
+	 */
+	public boolean contains(int workerA, int workerB) {
+		return this.get(workerA, workerB) != null;
+	}
+
+	/**
+	 * Gets the raters of a pair, creating them if they aren't in the map.
+	 *
+	 * @param workerA One of the workers
+	 * @param workerB The other worker
+	 * @return The raters of the pair
+	 */
+	public KappaRaters getOrCreate(int workerA, int workerB) {
+		long key = key(workerA, workerB);
+		int i = this.slot(key);
+
+		if (this.values[i] == null) {
+			KappaRaters kr = new KappaRaters(Math.min(workerA, workerB), Math.max(workerA, workerB));
+
+			this.keys[i] = key;
+			this.values[i] = kr;
+
+			if (++this.size * 4 > this.keys.length * 3) {
+				this.grow();
+			}
+
+			return kr;
+		}
+
+		return this.values[i];
+	}
+
+	/**
+	 * Removes a pair from the map.
+	 *
+	 * @param workerA One of the workers
+	 * @param workerB The other worker
+	 * @return The raters of the pair or null if they weren't in the map
+	 */
+	public KappaRaters remove(int workerA, int workerB) {
+		int i = this.slot(key(workerA, workerB));
+		KappaRaters removed = this.values[i];
+
+		if (removed == null) {
+			return null;
+		}
+
+		//The pairs after it in the same run are moved back, so no lookup
+		//stops at the hole left
+		int hole = i;
+		for (int j = (i + 1) & this.mask; this.values[j] != null; j = (j + 1) & this.mask) {
+			int home = hash(this.keys[j]) & this.mask;
+
+			if (((j - home) & this.mask) >= ((j - hole) & this.mask)) {
+				this.keys[hole] = this.keys[j];
+				this.values[hole] = this.values[j];
+				hole = j;
+			}
+		}
+
+		this.values[hole] = null;
+		this.size--;
+
+		return removed;
+	}
+
+	/**
+	 * Number of pairs in the map.
+	 *
+	 * @return The number of pairs
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Selects the pairs that have rated more units together, the ones with 
+	 * more units in common first. Only the best pairs are kept while looking 
+	 * for them.
+	 * 
+	 * @param topPairs Maximum number of pairs selected, 0 for all
+	 * @param minJudgments Minimum number of units in common of a pair
+	 * @return The raters of the pairs selected
+	 */
+	public List<KappaRaters> select(int topPairs, int minJudgments) {
+		PriorityQueue<KappaRaters> best = new PriorityQueue<KappaRaters>(11, Collections.reverseOrder(BY_JUDGMENTS));
+		List<KappaRaters> selected = new ArrayList<KappaRaters>();
+
+		for (KappaRaters kr : this) {
+			if (kr.getJudgments() < minJudgments) {
+				continue;
+			}
+
+			if (topPairs <= 0) {
+				selected.add(kr);
+			} else {
+				best.add(kr);
+				if (best.size() > topPairs) {
+					best.poll();
+				}
+			}
+		}
+
+		selected.addAll(best);
+		Collections.sort(selected, BY_JUDGMENTS);
+
+		return selected;
+	}
+
+	/**
+	 * Iterates over the raters of every pair, in no particular order.
+	 */
+	@Override
+	public Iterator<KappaRaters> iterator() {
+		return new Iterator<KappaRaters>() {
+
+			private int next = advance(0);
+
+			private int advance(int from) {
+				while (from < values.length && values[from] == null) {
+					from++;
+				}
+
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return this.next < values.length;
+			}
+
+			@Override
+			public KappaRaters next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				KappaRaters kr = values[this.next];
+				this.next = this.advance(this.next + 1);
+
+				return kr;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Finds the slot of a key: the one holding it or the empty slot where it
+	 * should be inserted.
+	 */
+	private int slot(long key) {
+		int i = hash(key) & this.mask;
+
+		while (this.values[i] != null && this.keys[i] != key) {
+			i = (i + 1) & this.mask;
+		}
+
+		return i;
+	}
+
+	private void grow() {
+		long[] oldKeys = this.keys;
+		KappaRaters[] oldValues = this.values;
+
+		this.keys = new long[oldKeys.length * 2];
+		this.values = new KappaRaters[oldValues.length * 2];
+		this.mask = this.keys.length - 1;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int j = this.slot(oldKeys[i]);
+
+				this.keys[j] = oldKeys[i];
+				this.values[j] = oldValues[i];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+
+		return (int) (h ^ (h >>> 32));
+	}
+}
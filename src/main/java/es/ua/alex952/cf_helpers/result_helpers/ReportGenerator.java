@@ -0,0 +1,79 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Generator of the report of the results of a job. The sections are written
+ * as they're generated, in the order they're called.
+ *
+ * @author alex952
+ */
+public interface ReportGenerator {
+
+	/**
+	 * Generates charts representing the Kappa average for each service (fluency
+	 * and adequacy).
+	 *
+	 * @param raters Hashmap of pairs of raters
+	 * @throws IOException If the report can't be written
+	 */
+	void generateKappaAverageCharts(HashMap<String, RaterPairMap> raters) throws IOException;
+
+	/**
+	 * Generates charts representing the agreement among all the raters of 
+	 * each service, for fluency and adequacy.
+	 *
+	 * @param agreement Hashmap of the agreement of each service
+	 * @throws IOException If the report can't be written
+	 */
+	void generateAgreementCharts(HashMap<String, MultiRaterAgreement> agreement) throws IOException;
+
+	/**
+	 * Generates charts representing the average fluency and adequacy scores
+	 * of each service.
+	 *
+	 * @param scores The average scores of the services
+	 * @throws IOException If the report can't be written
+	 */
+	void generateScoreCharts(ScoreAggregator scores) throws IOException;
+
+	/**
+	 * Generates a table for each service with the kappa of the pairs of 
+	 * raters, the ones with more units in common first.
+	 *
+	 * @param raters Hashmap of pairs of raters
+	 * @param topPairs Maximum number of pairs listed by service, 0 for all
+	 * @param minJudgments Minimum number of units in common of a listed pair
+	 * @param pageSize Number of pairs in each page
+	 * @throws IOException If the report can't be written
+	 */
+	void generateKappaTable(HashMap<String, RaterPairMap> raters, 
+			int topPairs, int minJudgments, int pageSize) throws IOException;
+
+	/**
+	 * Writes the end of the report. Nothing can be generated afterwards, and
+	 * the output isn't closed.
+	 * 
+	 * @throws IOException If the report can't be written
+	 */
+	void finish() throws IOException;
+}
@@ -0,0 +1,463 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes the report of a job as a self-contained HTML file: the charts are
+ * rendered here as inline SVG and the kappa tables as plain HTML tables, so
+ * the report doesn't load any script and can be read offline.
+ * 
+ * As {@link HTMLGenerator}, every section is written straight to the output
+ * as soon as it's generated.
+ *
+ * @author alex952
+ */
+public class SVGReportGenerator implements ReportGenerator {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 320;
+	private static final int MARGIN_LEFT = 60;
+	private static final int MARGIN_RIGHT = 170;
+	private static final int MARGIN_TOP = 40;
+	private static final int MARGIN_BOTTOM = 50;
+	private static final int TICKS = 4;
+	private static final String[] COLORS = {"#3366cc", "#dc3912", "#ff9900", "#109618"};
+
+	private final Writer out;
+	private final StringBuilder buffer = new StringBuilder(256);
+	private boolean started = false;
+	private boolean finished = false;
+
+	/**
+	 * Main constructor. The output should be buffered, as it's written in 
+	 * small pieces.
+	 * 
+	 * @param out Where the report is written
+	 */
+	public SVGReportGenerator(Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public synchronized void generateKappaAverageCharts(HashMap<String, RaterPairMap> raters) throws IOException {
+		String[] services = raters.keySet().toArray(new String[raters.size()]);
+		double[][] adequacy = new double[services.length][1];
+		double[][] fluency = new double[services.length][1];
+
+		for (int i = 0; i < services.length; i++) {
+			RaterPairMap serviceRatters = raters.get(services[i]);
+
+			for (KappaRaters kr : serviceRatters) {
+				fluency[i][0] += kr.getFluencyKappa();
+				adequacy[i][0] += kr.getAdequacyKappa();
+			}
+
+			fluency[i][0] /= serviceRatters.size();
+			adequacy[i][0] /= serviceRatters.size();
+		}
+
+		this.start();
+		out.write("<h2>Kappa averages by service</h2>\n");
+		this.writeColumnChart("Translation's Adequacy by translation service", "Adequacy", 
+				new String[] {"Adequacy"}, services, adequacy);
+		this.writeColumnChart("Translation's Fluency by translation service", "Fluency", 
+				new String[] {"Fluency"}, services, fluency);
+		out.flush();
+	}
+
+	@Override
+	public synchronized void generateAgreementCharts(HashMap<String, MultiRaterAgreement> agreement) throws IOException {
+		String[] services = agreement.keySet().toArray(new String[agreement.size()]);
+		String[] columns = {"Fleiss' kappa", "Krippendorff's alpha"};
+		double[][] adequacy = new double[services.length][];
+		double[][] fluency = new double[services.length][];
+
+		for (int i = 0; i < services.length; i++) {
+			MultiRaterAgreement a = agreement.get(services[i]);
+
+			adequacy[i] = new double[] {a.getAdequacyFleissKappa(), a.getAdequacyAlpha()};
+			fluency[i] = new double[] {a.getFluencyFleissKappa(), a.getFluencyAlpha()};
+		}
+
+		this.start();
+		out.write("<h2>Agreement among all raters by service</h2>\n");
+		this.writeColumnChart("Raters' agreement on Adequacy by translation service", "Adequacy", 
+				columns, services, adequacy);
+		this.writeColumnChart("Raters' agreement on Fluency by translation service", "Fluency", 
+				columns, services, fluency);
+		out.flush();
+	}
+
+	@Override
+	public synchronized void generateScoreCharts(ScoreAggregator scores) throws IOException {
+		String[] services = scores.getServices();
+		double[][] adequacy = new double[services.length][1];
+		double[][] fluency = new double[services.length][1];
+
+		for (int i = 0; i < services.length; i++) {
+			adequacy[i][0] = scores.getAdequacy(i);
+			fluency[i][0] = scores.getFluency(i);
+		}
+
+		this.start();
+		out.write("<h2>Adequacy/Fluency averages by service</h2>\n");
+		this.writeColumnChart("Translation's Adequacy by translation service", "Adequacy", 
+				new String[] {"Adequacy"}, services, adequacy);
+		this.writeColumnChart("Translation's Fluency by translation service", "Fluency", 
+				new String[] {"Fluency"}, services, fluency);
+		out.flush();
+	}
+
+	/**
+	 * Writes the table of each service, collapsed, with its pages as 
+	 * collapsed blocks too, so the browser only lays out what is opened.
+	 */
+	@Override
+	public synchronized void generateKappaTable(HashMap<String, RaterPairMap> raters, 
+			int topPairs, int minJudgments, int pageSize) throws IOException {
+		pageSize = Math.max(1, pageSize);
+
+		for (String service : raters.keySet()) {
+			RaterPairMap serviceRatters = raters.get(service);
+			List<KappaRaters> pairs = serviceRatters.select(topPairs, minJudgments);
+
+			this.start();
+			out.write("<details>\n<summary>Kappa results for service ");
+			out.write(escape(service));
+			out.write(" (" + pairs.size() + " of " + serviceRatters.size() + " pairs of raters)</summary>\n");
+
+			for (int from = 0; from < pairs.size(); from += pageSize) {
+				int to = Math.min(pairs.size(), from + pageSize);
+
+				out.write("<details>\n<summary>Pairs " + (from + 1) + " to " + to + "</summary>\n"
+						+ "<table>\n<tr><th>Rater A</th><th>Rater B</th><th>Units</th>"
+						+ "<th>Fluency kappa</th><th>Adequacy kappa</th></tr>\n");
+
+				for (int i = from; i < to; i++) {
+					KappaRaters kr = pairs.get(i);
+					StringBuilder row = this.buffer;
+
+					row.setLength(0);
+					row.append("<tr><td>").append(kr.getRaterA())
+							.append("</td><td>").append(kr.getRaterB())
+							.append("</td><td>").append(kr.getJudgments())
+							.append("</td><td>");
+					appendValue(row, kr.getFluencyKappa(), 4);
+					row.append("</td><td>");
+					appendValue(row, kr.getAdequacyKappa(), 4);
+					row.append("</td></tr>\n");
+
+					out.write(row.toString());
+				}
+
+				out.write("</table>\n</details>\n");
+			}
+
+			out.write("</details>\n");
+			out.flush();
+		}
+	}
+
+	/**
+	 * Renders a column chart with a group of bars for each service and one 
+	 * bar in the group for each column. Undefined values aren't drawn.
+	 */
+	private void writeColumnChart(String title, String axis, String[] columns, 
+			String[] services, double[][] values) throws IOException {
+		double min = 0.0;
+		double max = 0.0;
+
+		for (double[] row : values) {
+			for (double v : row) {
+				if (!Double.isNaN(v) && !Double.isInfinite(v)) {
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+			}
+		}
+		if (max - min < 1e-9) {
+			max = min + 1.0;
+		}
+
+		int plotWidth = WIDTH - MARGIN_LEFT - MARGIN_RIGHT;
+		int plotHeight = HEIGHT - MARGIN_TOP - MARGIN_BOTTOM;
+		double scale = plotHeight / (max - min);
+		double zero = MARGIN_TOP + max * scale;
+		StringBuilder b = this.buffer;
+
+		b.setLength(0);
+		b.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(WIDTH)
+				.append("\" height=\"").append(HEIGHT).append("\" font-family=\"Arial\" font-size=\"12\">\n");
+		b.append("<text x=\"").append(MARGIN_LEFT).append("\" y=\"20\" font-weight=\"bold\">")
+				.append(escape(title)).append("</text>\n");
+
+		//Axis with its ticks
+		for (int t = 0; t <= TICKS; t++) {
+			double value = min + (max - min) * t / TICKS;
+			double y = zero - value * scale;
+
+			b.append("<line x1=\"").append(MARGIN_LEFT).append("\" x2=\"").append(MARGIN_LEFT + plotWidth)
+					.append("\" y1=\"");
+			appendValue(b, y, 1);
+			b.append("\" y2=\"");
+			appendValue(b, y, 1);
+			b.append("\" stroke=\"#cccccc\"/>\n<text x=\"").append(MARGIN_LEFT - 5).append("\" y=\"");
+			appendValue(b, y + 4, 1);
+			b.append("\" text-anchor=\"end\">");
+			appendValue(b, value, 2);
+			b.append("</text>\n");
+		}
+		b.append("<line x1=\"").append(MARGIN_LEFT).append("\" x2=\"").append(MARGIN_LEFT + plotWidth)
+				.append("\" y1=\"");
+		appendValue(b, zero, 1);
+		b.append("\" y2=\"");
+		appendValue(b, zero, 1);
+		b.append("\" stroke=\"#333333\"/>\n");
+		b.append("<text x=\"").append(MARGIN_LEFT + plotWidth / 2).append("\" y=\"").append(HEIGHT - 10)
+				.append("\" text-anchor=\"middle\" fill=\"red\">").append(escape(axis)).append("</text>\n");
+		out.write(b.toString());
+
+		//Bars
+		double group = (double) plotWidth / Math.max(1, services.length);
+		double bar = group * 0.8 / columns.length;
+
+		for (int i = 0; i < services.length; i++) {
+			double x = MARGIN_LEFT + group * i + group * 0.1;
+
+			b.setLength(0);
+			for (int c = 0; c < columns.length; c++) {
+				double v = values[i][c];
+
+				if (Double.isNaN(v) || Double.isInfinite(v)) {
+					continue;
+				}
+
+				double top = v >= 0 ? zero - v * scale : zero;
+
+				b.append("<rect x=\"");
+				appendValue(b, x + bar * c, 1);
+				b.append("\" y=\"");
+				appendValue(b, top, 1);
+				b.append("\" width=\"");
+				appendValue(b, bar, 1);
+				b.append("\" height=\"");
+				appendValue(b, Math.abs(v) * scale, 1);
+				b.append("\" fill=\"").append(COLORS[c % COLORS.length]).append("\"><title>")
+						.append(escape(services[i])).append(", ").append(escape(columns[c])).append(": ");
+				appendValue(b, v, 4);
+				b.append("</title></rect>\n");
+			}
+
+			b.append("<text x=\"");
+			appendValue(b, x + group * 0.4, 1);
+			b.append("\" y=\"").append(HEIGHT - MARGIN_BOTTOM + 15).append("\" text-anchor=\"middle\">")
+					.append(escape(services[i])).append("</text>\n");
+			out.write(b.toString());
+		}
+
+		//Legend
+		b.setLength(0);
+		for (int c = 0; c < columns.length; c++) {
+			int y = MARGIN_TOP + 20 * c;
+
+			b.append("<rect x=\"").append(WIDTH - MARGIN_RIGHT + 15).append("\" y=\"").append(y)
+					.append("\" width=\"12\" height=\"12\" fill=\"").append(COLORS[c % COLORS.length]).append("\"/>\n")
+					.append("<text x=\"").append(WIDTH - MARGIN_RIGHT + 32).append("\" y=\"").append(y + 11).append("\">")
+					.append(escape(columns[c])).append("</text>\n");
+		}
+		b.append("</svg>\n");
+		out.write(b.toString());
+	}
+
+	/**
+	 * Appends a number rounded to some decimals, or n/a if it isn't defined.
+	 */
+	private static void appendValue(StringBuilder b, double value, int decimals) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			b.append("n/a");
+			return;
+		}
+
+		long factor = 1;
+		for (int i = 0; i < decimals; i++) {
+			factor *= 10;
+		}
+
+		long scaled = Math.round(Math.abs(value) * factor);
+		if (value < 0 && scaled != 0) {
+			b.append('-');
+		}
+
+		b.append(scaled / factor);
+		if (decimals > 0) {
+			long fraction = scaled % factor;
+			b.append('.');
+
+			for (long f = factor / 10; f > 1 && fraction < f; f /= 10) {
+				b.append('0');
+			}
+			b.append(fraction);
+		}
+	}
+
+	private static String escape(String text) {
+		StringBuilder b = new StringBuilder(text.length() + 8);
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			switch (c) {
+				case '&': b.append("&amp;"); break;
+				case '<': b.append("&lt;"); break;
+				case '>': b.append("&gt;"); break;
+				case '"': b.append("&quot;"); break;
+				case '\'': b.append("&#39;"); break;
+				default: b.append(c);
+			}
+		}
+
+		return b.toString();
+	}
+
+	private void start() throws IOException {
+		if (this.finished) {
+			throw new IllegalStateException("The report is already finished");
+		}
+
+		if (!this.started) {
+			out.write("<html>\n"
+					+ "<head>\n"
+					+ "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n"
+					+ "<style type=\"text/css\">\n"
+					+ "body { font-family: Arial, sans-serif; }\n"
+					+ "table { border-collapse: collapse; }\n"
+					+ "td, th { border: 1px solid #cccccc; padding: 2px 8px; text-align: right; }\n"
+					+ "summary { cursor: pointer; margin: 8px 0; }\n"
+					+ "</style>\n"
+					+ "</head>\n"
+					+ "<body>\n");
+			this.started = true;
+		}
+	}
+
+	@Override
+	public synchronized void finish() throws IOException {
+		if (this.finished) {
+			return;
+		}
+
+		this.start();
+		out.write("</body>\n</html>");
+		out.flush();
+		this.finished = true;
+	}
+
+	/**
+	 * Benchmark of the rendering of a report of a big job: the kappa tables 
+	 * of two services with thousands of pairs of raters, and the charts.
+	 */
+	public static void main(String[] args) throws IOException {
+		int workers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int neighbours = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		Random random = new Random(42);
+
+		HashMap<String, RaterPairMap> raters = new HashMap<String, RaterPairMap>();
+		HashMap<String, MultiRaterAgreement> agreement = new HashMap<String, MultiRaterAgreement>();
+		String[] services = {"apertium", "bing"};
+		int[] fluency = new int[neighbours];
+		int[] adequacy = new int[neighbours];
+
+		for (String service : services) {
+			RaterPairMap pairs = new RaterPairMap();
+			MultiRaterAgreement a = new MultiRaterAgreement();
+
+			for (int i = 0; i < workers; i++) {
+				for (int j = 1; j <= neighbours && i + j < workers; j++) {
+					KappaRaters kr = pairs.getOrCreate(i, i + j);
+					int units = 1 + random.nextInt(10);
+
+					for (int u = 0; u < units; u++) {
+						int score = random.nextInt(6);
+						kr.addFluency(score, Math.min(5, score + random.nextInt(2)));
+						kr.addAdequacy(score, Math.max(0, score - random.nextInt(2)));
+					}
+				}
+
+				for (int j = 0; j < neighbours; j++) {
+					fluency[j] = random.nextInt(6);
+					adequacy[j] = random.nextInt(6);
+				}
+				a.addUnit(fluency, adequacy, neighbours);
+			}
+
+			raters.put(service, pairs);
+			agreement.put(service, a);
+		}
+
+		Writer discard = new Writer() {
+
+			private long chars = 0;
+
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				chars += len;
+			}
+
+			@Override
+			public void write(String str) {
+				chars += str.length();
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public String toString() {
+				return String.valueOf(chars);
+			}
+		};
+
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			SVGReportGenerator generator = new SVGReportGenerator(discard);
+
+			generator.generateKappaTable(raters, 0, 1, 500);
+			generator.generateKappaAverageCharts(raters);
+			generator.generateAgreementCharts(agreement);
+			generator.finish();
+
+			long elapsed = System.nanoTime() - start;
+			System.out.println("Round " + round + ": " + (elapsed / 1000000) + " ms, "
+					+ (raters.get("bing").size() * services.length) + " rows");
+		}
+
+		System.out.println(discard + " chars written in total");
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import es.ua.alex952.cf_helpers.params.JSONParams;
+import es.ua.alex952.cf_helpers.params.JSONPath;
+import es.ua.alex952.cf_helpers.params.JSONStreamReader;
+import java.io.IOException;
+
+/**
+ * Average fluency and adequacy scores of each service, accumulated unit by
+ * unit from the aggregated judgments of the job.
+ *
+ * @author alex952
+ */
+public class ScoreAggregator implements JSONStreamReader.FieldHandler {
+
+	private String[] services;
+	private JSONPath[] fluencyPaths;
+	private JSONPath[] adequacyPaths;
+	private double[] fluency;
+	private double[] adequacy;
+	private int units = 0;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param services Names of the services
+	 */
+	public ScoreAggregator(String[] services) {
+		this.services = services;
+		this.fluency = new double[services.length];
+		this.adequacy = new double[services.length];
+		this.fluencyPaths = new JSONPath[services.length];
+		this.adequacyPaths = new JSONPath[services.length];
+
+		for (int i = 0; i < services.length; i++) {
+			this.fluencyPaths[i] = JSONPath.compile("").child("fluency_" + services[i]).child("avg");
+			this.adequacyPaths[i] = JSONPath.compile("").child("adequacy_" + services[i]).child("avg");
+		}
+	}
+
+	/**
+	 * Adds the average scores of one unit.
+	 *
+	 * @param unit The aggregated judgments of the unit
+	 */
+	public void addUnit(JSONParams unit) {
+		double[][] unitScores = this.decode(unit);
+
+		this.addUnit(unitScores[0], unitScores[1]);
+	}
+
+	/**
+	 * Adds the average scores of one unit.
+	 *
+	 * @param unitFluency Average fluency of each service
+	 * @param unitAdequacy Average adequacy of each service
+	 */
+	public void addUnit(double[] unitFluency, double[] unitAdequacy) {
+		for (int i = 0; i < services.length; i++) {
+			fluency[i] += unitFluency[i];
+			adequacy[i] += unitAdequacy[i];
+		}
+
+		units++;
+	}
+
+	/**
+	 * Removes the average scores of a unit added before, so the unit can be
+	 * added again with more judgments.
+	 *
+	 * @param unitFluency Average fluency of each service
+	 * @param unitAdequacy Average adequacy of each service
+	 */
+	public void removeUnit(double[] unitFluency, double[] unitAdequacy) {
+		for (int i = 0; i < services.length; i++) {
+			fluency[i] -= unitFluency[i];
+			adequacy[i] -= unitAdequacy[i];
+		}
+
+		units--;
+	}
+
+	/**
+	 * Reads the average scores of one unit.
+	 *
+	 * @param unit The aggregated judgments of the unit
+	 * @return The average fluency and adequacy of each service, in this order
+	 */
+	public double[][] decode(JSONParams unit) {
+		double[][] unitScores = new double[2][services.length];
+
+		for (int i = 0; i < services.length; i++) {
+			unitScores[0][i] = unit.getDouble(fluencyPaths[i]);
+			unitScores[1][i] = unit.getDouble(adequacyPaths[i]);
+		}
+
+		return unitScores;
+	}
+
+	/**
+	 * Each field of the judgments document is one unit.
+	 */
+	@Override
+	public void field(String key, JSONParams value) throws IOException {
+		this.addUnit(value);
+	}
+
+	/**
+	 * Names of the services.
+	 *
+	 * @return The names, in the order used by the getters
+	 */
+	public String[] getServices() {
+		return services;
+	}
+
+	/**
+	 * Average fluency of a service.
+	 *
+	 * @param service Index of the service
+	 * @return The average of the units' fluency
+	 */
+	public double getFluency(int service) {
+		return fluency[service] / units;
+	}
+
+	/**
+	 * Average adequacy of a service.
+	 *
+	 * @param service Index of the service
+	 * @return The average of the units' adequacy
+	 */
+	public double getAdequacy(int service) {
+		return adequacy[service] / units;
+	}
+
+	/**
+	 * Number of units added.
+	 *
+	 * @return The number of units
+	 */
+	public int getUnits() {
+		return units;
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.result_helpers;
+
+import es.ua.alex952.cf_helpers.params.JSONParams;
+import es.ua.alex952.cf_helpers.params.JSONPath;
+
+/**
+ * The judgments of one unit decoded into primitive arrays, so they are read
+ * from the JSON response only once.
+ *
+ * @author alex952
+ */
+public class UnitJudgments {
+
+	private String lo;
+	private String[] translations;
+	private int size;
+	private int[] workers;
+	private int[][] fluency;
+	private int[][] adequacy;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param lo The source sentence
+	 * @param translations The translation of each service
+	 * @param workers The worker of each judgment
+	 * @param fluency Fluency scores by service and judgment
+	 * @param adequacy Adequacy scores by service and judgment
+	 */
+	public UnitJudgments(String lo, String[] translations, int[] workers, int[][] fluency, int[][] adequacy) {
+		this.lo = lo;
+		this.translations = translations;
+		this.size = workers.length;
+		this.workers = workers;
+		this.fluency = fluency;
+		this.adequacy = adequacy;
+	}
+
+	/**
+	 * Decodes a complete unit as returned by the server. When many units are
+	 * decoded, a {@link Decoder} should be kept instead.
+	 *
+	 * @param completeUnit The unit with its results
+	 * @param services Names of the services, in the order used by the arrays
+	 * @return The decoded judgments
+	 */
+	public static UnitJudgments decode(JSONParams completeUnit, String[] services) {
+		return new Decoder(services).decode(completeUnit);
+	}
+
+	/**
+	 * Decoder of the units of a job, with the paths of every field compiled
+	 * once for its services.
+	 */
+	public static class Decoder {
+
+		private static final JSONPath JUDGMENTS = JSONPath.compile("/results/judgments");
+		private static final JSONPath WORKER = JSONPath.compile("/worker_id");
+		private static final JSONPath LO = JSONPath.compile("/unit_data/lo");
+
+		private int services;
+		private JSONPath[] translations;
+		private JSONPath[] fluency;
+		private JSONPath[] adequacy;
+
+		/**
+		 * Main constructor.
+		 *
+		 * @param services Names of the services, in the order used by the arrays
+		 */
+		public Decoder(String[] services) {
+			this.services = services.length;
+			this.translations = new JSONPath[services.length];
+			this.fluency = new JSONPath[services.length];
+			this.adequacy = new JSONPath[services.length];
+
+			for (int k = 0; k < services.length; k++) {
+				this.translations[k] = JSONPath.compile("/unit_data").child(services[k]);
+				this.fluency[k] = JSONPath.compile("/data").child("fluency_" + services[k]);
+				this.adequacy[k] = JSONPath.compile("/data").child("adequacy_" + services[k]);
+			}
+		}
+
+		/**
+		 * Decodes a complete unit as returned by the server.
+		 *
+		 * @param completeUnit The unit with its results
+		 * @return The decoded judgments
+		 */
+		public UnitJudgments decode(JSONParams completeUnit) {
+			JSONParams judgments = completeUnit.getObject(JUDGMENTS);
+			int n = judgments == null ? 0 : judgments.size();
+
+			String lo = null;
+			String[] unitTranslations = new String[services];
+			int[] workers = new int[n];
+			int[][] fluencyScores = new int[services][n];
+			int[][] adequacyScores = new int[services][n];
+
+			for (int i = 0; i < n; i++) {
+				JSONParams judgment = judgments.getObjectAt(i);
+
+				if (i == 0) {
+					lo = judgment.getProperty(LO);
+					for (int k = 0; k < services; k++) {
+						unitTranslations[k] = judgment.getProperty(translations[k]);
+					}
+				}
+
+				workers[i] = judgment.getInt(WORKER);
+
+				for (int k = 0; k < services; k++) {
+					fluencyScores[k][i] = judgment.getInt(fluency[k]);
+					adequacyScores[k][i] = judgment.getInt(adequacy[k]);
+				}
+			}
+
+			return new UnitJudgments(lo, unitTranslations, workers, fluencyScores, adequacyScores);
+		}
+	}
+
+	public String getLo() {
+		return lo;
+	}
+
+	/**
+	 * Translation of a service.
+	 *
+	 * @param service Index of the service
+	 * @return The translation
+	 */
+	public String getTranslation(int service) {
+		return translations[service];
+	}
+
+	/**
+	 * Number of judgments of the unit.
+	 *
+	 * @return The number of judgments
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Workers of the judgments.
+	 *
+	 * @return The worker id of each judgment
+	 */
+	public int[] getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Fluency scores given to a service.
+	 *
+	 * @param service Index of the service
+	 * @return The score of each judgment
+	 */
+	public int[] getFluency(int service) {
+		return fluency[service];
+	}
+
+	/**
+	 * Adequacy scores given to a service.
+	 *
+	 * @param service Index of the service
+	 * @return The score of each judgment
+	 */
+	public int[] getAdequacy(int service) {
+		return adequacy[service];
+	}
+}
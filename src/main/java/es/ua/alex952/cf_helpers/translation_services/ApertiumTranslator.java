@@ -18,10 +18,17 @@
  */
 package es.ua.alex952.cf_helpers.translation_services;
 
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 import es.ua.alex952.cf_helpers.ConnectionHelper;
 import es.ua.alex952.cf_helpers.params.JSONParams;
+import es.ua.alex952.cf_helpers.params.JSONPath;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -31,6 +38,19 @@ import java.util.regex.Pattern;
  * @author alex952
  */
 public class ApertiumTranslator extends Service {
+	
+	/**
+	 * Segments sent in a single request (one q parameter each).
+	 */
+	private static final int BATCH_SIZE = 16;
+	/**
+	 * Longest encoded query sent in a single request, well below the limit
+	 * of the usual servers and proxies.
+	 */
+	private static final int MAX_QUERY_LENGTH = 2000;
+	
+	private static final JSONPath TRANSLATED_TEXT = JSONPath.compile("/responseData/translatedText");
+	private static final JSONPath RESPONSES = JSONPath.compile("/responseData");
 
 	String key;
 	
@@ -51,14 +71,102 @@ public class ApertiumTranslator extends Service {
 		try {
 			JSONParams response = new JSONParams(ret);
 			
-			translation = response.getObject("responseData").getProperty("translatedText");
-			translation = translation.replaceAll(Pattern.quote("*"), "");
+			translation = response.getProperty(TRANSLATED_TEXT);
+			if (translation != null) {
+				translation = translation.replaceAll(Pattern.quote("*"), "");
+			}
 		} catch (IOException ex) {
 			translation = null;
 		}
 		
 		return translation;
 	}
+
+	@Override
+	public int getBatchSize() {
+		return BATCH_SIZE;
+	}
+
+	/**
+	 * Translates several segments in one request. The service answers with an
+	 * array of responses, one for each q parameter, in the same order.
+	 * 
+	 * The segments are split further so the encoded query of each request
+	 * stays under {@link ApertiumTranslator#MAX_QUERY_LENGTH}.
+	 */
+	@Override
+	protected List<String> translateChunk(List<String> texts, String lo, String lm) {
+		List<String> translations = new ArrayList<String>(texts.size());
+		int from = 0;
+		int length = 0;
+		
+		for (int i = 0; i < texts.size(); i++) {
+			int encoded = encodedLength(texts.get(i));
+			
+			if (i > from && length + encoded > MAX_QUERY_LENGTH) {
+				translations.addAll(this.translateBatch(texts.subList(from, i), lo, lm));
+				from = i;
+				length = 0;
+			}
+			length += encoded;
+		}
+		translations.addAll(this.translateBatch(texts.subList(from, texts.size()), lo, lm));
+		
+		return translations;
+	}
+	
+	private List<String> translateBatch(List<String> texts, String lo, String lm) {
+		if (texts.size() == 1) {
+			return super.translateChunk(texts, lo, lm);
+		}
+		
+		String url = "http://api.apertium.org/json/translate";
+		List<String> translations = new ArrayList<String>(texts.size());
+		
+		try {
+			WebResource wr = ConnectionHelper.getResource(url);
+			for (String text : texts) {
+				wr = wr.queryParam("q", text);
+			}
+			wr = wr.queryParam("langpair", lo+"|"+lm);
+			String ret = wr.get(String.class);
+			
+			JSONParams responses = new JSONParams(ret).getObject(RESPONSES);
+			
+			for (int i = 0; i < texts.size(); i++) {
+				String translation = responses.getObjectAt(i).getProperty(TRANSLATED_TEXT);
+				translations.add(translation.replaceAll(Pattern.quote("*"), ""));
+			}
+		} catch (UniformInterfaceException ex) {
+			//Rejected request (URI too long, server error...), fall back to one
+			//request per segment
+			Logger.getLogger(ApertiumTranslator.class.getName()).log(Level.WARNING, 
+					"Batched request failed with status {0}, translating one segment at a time", 
+					ex.getResponse().getStatus());
+			return super.translateChunk(texts, lo, lm);
+		} catch (ClientHandlerException ex) {
+			Logger.getLogger(ApertiumTranslator.class.getName()).log(Level.WARNING, 
+					"Batched request failed, translating one segment at a time", ex);
+			return super.translateChunk(texts, lo, lm);
+		} catch (Exception ex) {
+			//Malformed or partial response, fall back to one request per segment
+			return super.translateChunk(texts, lo, lm);
+		}
+		
+		return translations;
+	}
+	
+	/**
+	 * Length of a segment once encoded as a q parameter of the query.
+	 */
+	private static int encodedLength(String text) {
+		try {
+			return "&q=".length() + URLEncoder.encode(text, "UTF-8").length();
+		} catch (UnsupportedEncodingException e) {
+			//Every JVM has to provide it
+			throw new IllegalStateException(e);
+		}
+	}
 	
 	public static void main(String[] args) {
 		ApertiumTranslator at = new ApertiumTranslator("nada");
@@ -20,6 +20,9 @@ package es.ua.alex952.cf_helpers.translation_services;
 
 import com.memetix.mst.language.Language;
 import com.memetix.mst.translate.Translate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +31,10 @@ import java.util.logging.Logger;
  * @author alex952
  */
 public class BingTranslator extends Service {
+	/**
+	 * Segments sent in a single translateArray request
+	 */
+	private static final int BATCH_SIZE = 50;
 	/**
 	 * Client id of the application registered in Microsoft marketplace
 	 */
@@ -60,6 +67,33 @@ public class BingTranslator extends Service {
 		
 		return translation;
 	}
+
+	@Override
+	public int getBatchSize() {
+		return BATCH_SIZE;
+	}
+
+	@Override
+	protected List<String> translateChunk(List<String> texts, String lo, String lm) {
+		Translate.setClientId(this.clientId);
+		Translate.setClientSecret(this.clientSecret);
+		
+		try {
+			Language lLO = Language.fromString(lo);
+			Language lLM = Language.fromString(lm);
+			
+			String[] translations = Translate.execute(texts.toArray(new String[texts.size()]), lLO, lLM);
+			
+			return new ArrayList<String>(Arrays.asList(translations));
+		} catch (Exception ex) {
+			List<String> translations = new ArrayList<String>(texts.size());
+			for (int i = 0; i < texts.size(); i++) {
+				translations.add(null);
+			}
+			
+			return translations;
+		}
+	}
 	
 	public static void main(String[] args) {
 		BingTranslator bt = new BingTranslator("54acb00c-d618-4503-8743-f02f7bb52806", "kt6l0gi/bgG5snL9na9+zCHct3NBL81TXJGdusm3Vg4=");
@@ -0,0 +1,134 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.translation_services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorator of a {@link Service} that looks up the translations in a
+ * {@link TranslationCache} before asking the service for them. It keeps
+ * the name of the decorated service, so the units created don't change.
+ *
+ * @author alex952
+ */
+public class CachedService extends Service {
+
+	private final Logger logger = LoggerFactory.getLogger(CachedService.class);
+
+	private Service service;
+	private TranslationCache cache;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param service The decorated service
+	 * @param cache The cache where the translations are kept
+	 */
+	public CachedService(Service service, TranslationCache cache) {
+		super(service.getName());
+		this.service = service;
+		this.cache = cache;
+	}
+
+	@Override
+	public String getTranslation(String text, String lo, String lm) {
+		String key = TranslationCache.key(this.getName(), lo, lm, text);
+		String translation = this.lookup(key);
+
+		if (translation == null) {
+			translation = this.service.getTranslation(text, lo, lm);
+			this.store(key, translation);
+		}
+
+		return translation;
+	}
+
+	@Override
+	public int getBatchSize() {
+		return this.service.getBatchSize();
+	}
+
+	/**
+	 * Only the sentences missing from the cache are sent, in one batch, to
+	 * the decorated service.
+	 */
+	@Override
+	public List<String> getTranslations(List<String> texts, String lo, String lm) {
+		List<String> translations = new ArrayList<String>(texts.size());
+		List<String> keys = new ArrayList<String>(texts.size());
+		List<String> missing = new ArrayList<String>();
+
+		for (String text : texts) {
+			String key = TranslationCache.key(this.getName(), lo, lm, text);
+			String translation = this.lookup(key);
+
+			keys.add(key);
+			translations.add(translation);
+
+			if (translation == null) {
+				missing.add(text);
+			}
+		}
+
+		if (missing.isEmpty()) {
+			return translations;
+		}
+
+		List<String> translated = this.service.getTranslations(missing, lo, lm);
+		int m = 0;
+
+		for (int i = 0; i < translations.size(); i++) {
+			if (translations.get(i) == null) {
+				String translation = translated.get(m++);
+
+				translations.set(i, translation);
+				this.store(keys.get(i), translation);
+			}
+		}
+
+		return translations;
+	}
+
+	private String lookup(String key) {
+		try {
+			return this.cache.get(key);
+		} catch (IOException e) {
+			logger.warn("The translation cache couldn't be read", e);
+
+			return null;
+		}
+	}
+
+	private void store(String key, String translation) {
+		//Failed translations are not cached, so they are retried next time
+		if (translation == null) {
+			return;
+		}
+
+		try {
+			this.cache.put(key, translation);
+		} catch (IOException e) {
+			logger.warn("The translation cache couldn't be written", e);
+		}
+	}
+}
@@ -18,6 +18,9 @@
  */
 package es.ua.alex952.cf_helpers.translation_services;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author alex952
@@ -39,4 +42,57 @@ public abstract class Service {
 	}
 	
 	public abstract String getTranslation(String text, String lo, String lm);
+	
+	/**
+	 * Maximum number of sentences sent to the service in one request. 
+	 * Services without native batching translate one sentence per request.
+	 * 
+	 * @return The number of sentences per request
+	 */
+	public int getBatchSize() {
+		return 1;
+	}
+	
+	/**
+	 * Translates a list of sentences. The list is split in chunks of 
+	 * {@link Service#getBatchSize()} sentences and each chunk is translated
+	 * with {@link Service#translateChunk(java.util.List, java.lang.String, java.lang.String)}.
+	 * 
+	 * @param texts The sentences to be translated
+	 * @param lo Source language
+	 * @param lm Target language
+	 * @return The translations, in the same order as the sentences
+	 */
+	public List<String> getTranslations(List<String> texts, String lo, String lm) {
+		List<String> translations = new ArrayList<String>(texts.size());
+		int batch = Math.max(1, this.getBatchSize());
+		
+		for (int i = 0; i < texts.size(); i += batch) {
+			List<String> chunk = texts.subList(i, Math.min(i + batch, texts.size()));
+			
+			translations.addAll(this.translateChunk(chunk, lo, lm));
+		}
+		
+		return translations;
+	}
+	
+	/**
+	 * Translates a chunk of at most {@link Service#getBatchSize()} sentences. 
+	 * By default every sentence is translated on its own; services that 
+	 * accept several segments per request override it.
+	 * 
+	 * @param texts The sentences of the chunk
+	 * @param lo Source language
+	 * @param lm Target language
+	 * @return The translations, in the same order as the sentences
+	 */
+	protected List<String> translateChunk(List<String> texts, String lo, String lm) {
+		List<String> translations = new ArrayList<String>(texts.size());
+		
+		for (String text : texts) {
+			translations.add(this.getTranslation(text, lo, lm));
+		}
+		
+		return translations;
+	}
 }
@@ -0,0 +1,275 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.translation_services;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * File backed store of translations, bounded in size with a least recently
+ * used eviction policy. It's shared by all the {@link CachedService} objects,
+ * as the keys contain the service name and the language pair.
+ *
+ * New translations are appended to the file as soon as they are stored, and
+ * the file is rewritten with the live entries only when the cache is closed
+ * (or when it has grown too much while loading it).
+ *
+ * @author alex952
+ */
+public class TranslationCache {
+
+	private static final String ENCODING = "UTF-8";
+
+	private File file;
+	private int maxEntries;
+	private LinkedHashMap<String, String> entries = null;
+	private Writer log = null;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Main constructor. The file isn't read until the first access.
+	 *
+	 * @param path Path of the file where the translations are kept
+	 * @param maxEntries Maximum number of translations kept
+	 */
+	public TranslationCache(String path, int maxEntries) {
+		this.file = new File(path);
+		this.maxEntries = Math.max(1, maxEntries);
+	}
+
+	/**
+	 * Builds the key for one sentence.
+	 *
+	 * @param service Name of the service
+	 * @param lo Source language
+	 * @param lm Target language
+	 * @param text Sentence to be translated
+	 * @return The key of the sentence in the cache
+	 */
+	public static String key(String service, String lo, String lm, String text) {
+		return service + "|" + lo + "|" + lm + "|" + hash(text);
+	}
+
+	/**
+	 * Looks up a translation.
+	 *
+	 * @param key Key built with {@link TranslationCache#key(java.lang.String, java.lang.String, java.lang.String, java.lang.String)}
+	 * @return The translation or null if it isn't cached
+	 * @throws IOException If the cache file couldn't be read
+	 */
+	public synchronized String get(String key) throws IOException {
+		this.load();
+
+		String translation = this.entries.get(key);
+
+		if (translation == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+
+		return translation;
+	}
+
+	/**
+	 * Stores a translation, appending it to the cache file.
+	 *
+	 * @param key Key built with {@link TranslationCache#key(java.lang.String, java.lang.String, java.lang.String, java.lang.String)}
+	 * @param translation The translation
+	 * @throws IOException If the cache file couldn't be written
+	 */
+	public synchronized void put(String key, String translation) throws IOException {
+		this.load();
+
+		this.entries.put(key, translation);
+
+		if (this.log == null) {
+			this.log = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), ENCODING));
+		}
+
+		this.log.write(key + "\t" + escape(translation) + "\n");
+	}
+
+	/**
+	 * Writes the pending translations to disk.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (this.log != null) {
+			this.log.flush();
+		}
+	}
+
+	/**
+	 * Rewrites the cache file with the entries currently in the cache and
+	 * releases it.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (this.log != null) {
+			this.log.close();
+			this.log = null;
+		}
+
+		if (this.entries != null) {
+			this.compact();
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Reads the cache file the first time the cache is accessed.
+	 */
+	private void load() throws IOException {
+		if (this.entries != null) {
+			return;
+		}
+
+		final int max = this.maxEntries;
+		this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return this.size() > max;
+			}
+		};
+
+		if (!this.file.exists()) {
+			return;
+		}
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), ENCODING));
+		int lines = 0;
+
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int tab = line.indexOf('\t');
+
+				if (tab > 0) {
+					this.entries.put(line.substring(0, tab), unescape(line.substring(tab + 1)));
+					lines++;
+				}
+			}
+		} finally {
+			br.close();
+		}
+
+		if (lines > 2 * this.maxEntries) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * Rewrites the cache file with the live entries only.
+	 */
+	private void compact() throws IOException {
+		File tmp = new File(this.file.getPath() + ".tmp");
+		Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+
+		try {
+			for (Map.Entry<String, String> e : this.entries.entrySet()) {
+				w.write(e.getKey() + "\t" + escape(e.getValue()) + "\n");
+			}
+		} finally {
+			w.close();
+		}
+
+		if (!tmp.renameTo(this.file)) {
+			this.file.delete();
+
+			if (!tmp.renameTo(this.file)) {
+				throw new IOException("The translation cache " + this.file + " couldn't be replaced");
+			}
+		}
+	}
+
+	private static String hash(String text) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(text.getBytes(ENCODING));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String escape(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			switch (c) {
+				case '\\': sb.append("\\\\"); break;
+				case '\t': sb.append("\\t"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				default: sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static String unescape(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '\\' && i + 1 < text.length()) {
+				c = text.charAt(++i);
+
+				switch (c) {
+					case 't': sb.append('\t'); break;
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					default: sb.append(c);
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.cf_helpers.translation_services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Translation stage that sends the sentences to every {@link Service}
+ * concurrently, in chunks of the service batch size and with a bounded
+ * number of workers, and gives the translations back in the same order the
+ * sentences were passed.
+ *
+ * @author alex952
+ */
+public class TranslationPool {
+
+	private Service[] services;
+	private ExecutorService executor;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param services The services used to translate each sentence
+	 * @param threads Maximum number of translations running at the same time
+	 */
+	public TranslationPool(Service[] services, int threads) {
+		this.services = services;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+	}
+
+	/**
+	 * Translates a group of sentences with all the services.
+	 *
+	 * @param sentences The sentences to be translated
+	 * @param lo Source language
+	 * @param lm Target language
+	 * @return A matrix with one row per sentence (same order as the input)
+	 * and one column per service (same order as the services)
+	 * @throws IOException If a translation could not be completed
+	 */
+	public String[][] translate(List<String> sentences, String lo, String lm) throws IOException {
+		List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+
+		//Every service receives the sentences in chunks of its own batch size
+		for (Service s : services) {
+			int batch = Math.max(1, s.getBatchSize());
+			
+			for (int i = 0; i < sentences.size(); i += batch) {
+				List<String> chunk = sentences.subList(i, Math.min(i + batch, sentences.size()));
+				
+				futures.add(executor.submit(new TranslationTask(s, chunk, lo, lm)));
+			}
+		}
+
+		String[][] translations = new String[sentences.size()][services.length];
+
+		try {
+			int f = 0;
+			for (int j = 0; j < services.length; j++) {
+				int i = 0;
+				
+				while (i < sentences.size()) {
+					for (String translation : futures.get(f++).get()) {
+						translations[i++][j] = translation;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Translation interrupted");
+		} catch (ExecutionException e) {
+			throw new IOException("Translation failed: " + e.getCause().getMessage());
+		} finally {
+			for (Future<List<String>> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		return translations;
+	}
+
+	/**
+	 * Stops the workers of the pool. It must be called once the pool is no
+	 * longer needed.
+	 */
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * One chunk of sentences translated by one service.
+	 */
+	private static class TranslationTask implements Callable<List<String>> {
+
+		private Service service;
+		private List<String> texts;
+		private String lo;
+		private String lm;
+
+		public TranslationTask(Service service, List<String> texts, String lo, String lm) {
+			this.service = service;
+			this.texts = texts;
+			this.lo = lo;
+			this.lm = lm;
+		}
+
+		@Override
+		public List<String> call() throws Exception {
+			return service.getTranslations(texts, lo, lm);
+		}
+	}
+}
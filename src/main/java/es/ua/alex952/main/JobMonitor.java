@@ -0,0 +1,210 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.main;
+
+import es.ua.alex952.cf_helpers.JobsCF;
+import es.ua.alex952.exceptions.ParameterNeeded;
+import java.awt.Desktop;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Daemon that watches many jobs from one process. The checks of every job
+ * run on a shared scheduled executor, so no more than a given number of
+ * them run at once, and each job schedules its next check when the last
+ * one ends, at the wait decided by its own {@link PollScheduler}. Each job
+ * keeps its own {@link JobsCF} instance, so their results don't mix.
+ *
+ * @author alex952
+ */
+public class JobMonitor {
+
+	/**
+	 * Consecutive failed checks of a job before it's given up
+	 */
+	private static final int MAX_FAILURES = 10;
+
+	private final Logger logger = LoggerFactory.getLogger(JobMonitor.class);
+
+	private ScheduledExecutorService executor;
+	private List<Watch> watches = new ArrayList<Watch>();
+	private CountDownLatch pending;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param threads Maximum number of checks running at once
+	 */
+	public JobMonitor(int threads) {
+		this.executor = Executors.newScheduledThreadPool(Math.max(1, threads));
+	}
+
+	/**
+	 * Adds a job to watch. Must be called before {@link JobMonitor#run()}.
+	 *
+	 * @param job The job, with its id
+	 * @param scheduler Decides the waits between the checks of the job
+	 * @param graph Where the graph of the results is written
+	 * @param open Whether the graph is opened once written
+	 * @param delay Wait before the first check, in milliseconds
+	 */
+	public void watch(JobsCF job, PollScheduler scheduler, File graph, boolean open, long delay) {
+		this.watches.add(new Watch(job, scheduler, graph, open, delay));
+	}
+
+	/**
+	 * Watches the jobs until every one of them has finished, and its results
+	 * are written, or has been given up.
+	 *
+	 * @throws InterruptedException If interrupted while waiting. The checks
+	 * running are interrupted too.
+	 */
+	public void run() throws InterruptedException {
+		this.pending = new CountDownLatch(this.watches.size());
+
+		try {
+			for (Watch w : this.watches) {
+				this.executor.schedule(w, w.delay, TimeUnit.MILLISECONDS);
+			}
+
+			this.pending.await();
+		} finally {
+			this.executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Writes the graph of the results collected so far of every job still
+	 * running.
+	 */
+	public void writePartialReports() {
+		for (Watch w : this.watches) {
+			if (w.done) {
+				continue;
+			}
+
+			try {
+				MainBatch.writeGraph(w.job, w.graph, MainBatch.Results.PARTIAL);
+				w.show();
+			} catch (IOException e) {
+				this.logger.error("The partial results of the job " + w.id + " couldn't be written: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * The checks of one job.
+	 */
+	private class Watch implements Runnable {
+
+		private final JobsCF job;
+		private final String id;
+		private final PollScheduler scheduler;
+		private final File graph;
+		private final boolean open;
+		private final long delay;
+		private volatile boolean done = false;
+
+		private Watch(JobsCF job, PollScheduler scheduler, File graph, boolean open, long delay) {
+			this.job = job;
+			this.id = job.getParameter("id");
+			this.scheduler = scheduler;
+			this.graph = graph;
+			this.open = open;
+			this.delay = delay;
+		}
+
+		@Override
+		public void run() {
+			long wait;
+
+			try {
+				//The state is checked before polling, so the last poll gets
+				//every judgment of a finished job
+				boolean finished = this.job.isFinished();
+				int updated = this.job.poll();
+
+				if (finished) {
+					logger.info("The job {} has already finished. Preparing results", this.id);
+					MainBatch.writeGraph(this.job, this.graph, MainBatch.Results.POLLED);
+					this.show();
+					this.finish();
+
+					return;
+				}
+
+				wait = this.scheduler.next(this.job.getPolledJudgments(), this.job.getExpectedJudgments());
+				logger.info("The job {} hasn't finished yet ({} of {} judgments, {} units updated). Waiting {} ms to check again",
+						new Object[] {this.id, this.job.getPolledJudgments(), this.job.getExpectedJudgments(), updated, wait});
+			} catch (ParameterNeeded e) {
+				logger.error("A parameter of the job " + this.id + " couldn't be found", e);
+				this.finish();
+
+				return;
+			} catch (Exception e) {
+				if (this.scheduler.getFailures() + 1 >= MAX_FAILURES) {
+					logger.error("Some error ocurred either checking on the state of the job " + this.id + " or gathering its results. Giving it up", e);
+					this.finish();
+
+					return;
+				}
+
+				wait = this.scheduler.failed();
+				logger.warn("Checking on the job " + this.id + " failed (" + e.getMessage() + "). Retrying in " + wait + " ms");
+			}
+
+			try {
+				executor.schedule(this, wait, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				//The monitor is shutting down
+				this.finish();
+			}
+		}
+
+		private void show() {
+			logger.info("The html file with the results of the job {} has been written to the file {}", this.id, this.graph);
+
+			if (this.open) {
+				logger.info("Opening default HTML handler (usually a browser) to show results");
+
+				try {
+					Desktop.getDesktop().open(this.graph);
+				} catch (Exception e) {
+					logger.warn("The file " + this.graph + " couldn't be opened: " + e.getMessage());
+				}
+			}
+		}
+
+		private void finish() {
+			if (!this.done) {
+				this.done = true;
+				pending.countDown();
+			}
+		}
+	}
+}
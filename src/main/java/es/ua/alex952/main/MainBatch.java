@@ -22,9 +22,20 @@ import es.ua.alex952.cf_helpers.JobsCF;
 import es.ua.alex952.exceptions.KeyNotConfigured;
 import es.ua.alex952.exceptions.ParameterNeeded;
 import java.awt.Desktop;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
@@ -37,7 +48,16 @@ class MainBatch implements Runnable {
 
 	private enum Operation {
 
-		QUERY, CREATE, DAEMON, QUIT;
+		QUERY, CREATE, DAEMON, OFFLINE, QUIT;
+	}
+	
+	/**
+	 * Results written to the graph: read from the local store, polled from
+	 * a finished job or polled so far from a running job.
+	 */
+	enum Results {
+		
+		STORED, POLLED, PARTIAL;
 	}
 	//Operation casted
 	private Operation op = null;
@@ -47,10 +67,12 @@ class MainBatch implements Runnable {
 	private String pathGold = null;
 	//Is daemon mode activated?
 	private boolean daemon = false;
-	//Daemon check frecuency
-	private Long frecuency = 10000L;
+	//Daemon minimum check frecuency (null for the configured one)
+	private Long frecuency = null;
 	//Id for eht job (created or asked for monitorizing)
 	private String id = null;
+	//Ids of the jobs asked for monitorizing, each one once
+	private Set<String> ids = new LinkedHashSet<String>();
 	//Instance for operation
 	private JobsCF instance = null;
 	//Config file default value
@@ -67,7 +89,9 @@ class MainBatch implements Runnable {
 		//Operation creation for usage print		
 		Option create = OptionBuilder.withLongOpt("create").withDescription("switch for creating a job").create("c");
 
-		Option daemon = OptionBuilder.withArgName("id").withLongOpt("daemon").withDescription("daemon mode for monitorizing the job after its creation").hasOptionalArg().create("d");
+		Option daemon = OptionBuilder.withArgName("id[,id...]").withLongOpt("daemon").withDescription("daemon mode for monitorizing the job after its creation, or the jobs given").hasOptionalArg().create("d");
+		
+		Option watchlist = OptionBuilder.withArgName("jobs.txt").withLongOpt("watchlist").withDescription("daemon mode for monitorizing the jobs listed in the file, one id per line").hasArg().create("w");
 
 		Option configfile = OptionBuilder.withArgName("config.properties").withLongOpt("configfile").withDescription("the properties config file that has all the program specific configurations").hasArg().create("cf");
 
@@ -79,13 +103,17 @@ class MainBatch implements Runnable {
 
 		Option gold = OptionBuilder.withArgName("gold.txt").withLongOpt("gold").withDescription("text file with the gold standards given for the job. It has a three lines format that is composed by one line for the source language sentence, one for the reference translation, and the last one for the correct translation").hasArg().create("g");
 		
-		Option daemonfrecuency = OptionBuilder.withArgName("daemon frecuency").withLongOpt("daemonfrecuency").withDescription("daemon check frecuency").hasArg().create("df");
+		Option offline = OptionBuilder.withArgName("id").withLongOpt("offline").withDescription("writes the results of a job from its local store, without connecting to CrowdFlower").hasArg().create("o");
+		
+		Option daemonfrecuency = OptionBuilder.withArgName("daemon frecuency").withLongOpt("daemonfrecuency").withDescription("minimum time between checks of the daemon, in milliseconds").hasArg().create("df");
 
 		Option help = OptionBuilder.withLongOpt("help").withDescription("shows this help message").create("h");
 
 		options.addOption(create);
 		options.addOption(daemon);
+		options.addOption(watchlist);
 		options.addOption(daemonfrecuency);
+		options.addOption(offline);
 		options.addOption(configfile);
 		options.addOption(parametersfile);
 		options.addOption(sourcelanguage);
@@ -106,13 +134,19 @@ class MainBatch implements Runnable {
 				return;
 			}
 			
-			if (cl.hasOption("daemon") && !cl.hasOption("c")) {
-				if (cl.getOptionValue("daemon") == null) {
-					logger.error("The daemon option must have a job id if it isn't along with create option");
+			if (cl.hasOption("offline")) {
+				if (!cl.hasOption("configfile")) {
+					logger.error("The config file is mandatory");
 					op = Operation.QUIT;
 					
 					return;
-				} else if (!cl.hasOption("configfile")) {
+				}
+				
+				this.id = cl.getOptionValue("offline");
+				this.configFile = cl.getOptionValue("configfile");
+				this.op = Operation.OFFLINE;
+			} else if ((cl.hasOption("daemon") || cl.hasOption("watchlist")) && !cl.hasOption("c")) {
+				if (!cl.hasOption("configfile")) {
 					logger.error("The config file is mandatory");
 					op = Operation.QUIT;
 					
@@ -120,24 +154,41 @@ class MainBatch implements Runnable {
 				}
 				
 				try {
-					Integer.parseInt(cl.getOptionValue("daemon"));
+					List<String> given = new ArrayList<String>();
 					
-					this.id = cl.getOptionValue("daemon");
-					this.configFile = cl.getOptionValue("configfile");
-					this.op = Operation.DAEMON;
+					if (cl.getOptionValue("daemon") != null) {
+						given.addAll(Arrays.asList(cl.getOptionValue("daemon").split(",")));
+					}
+					if (cl.hasOption("watchlist")) {
+						given.addAll(this.readWatchList(cl.getOptionValue("watchlist")));
+					}
 					
-					if (cl.hasOption("daemonfrecuency")) {
-						try {
-                            Long l = Long.parseLong(id);
-							this.frecuency  = l;
-						} catch (NumberFormatException e) {
-							this.logger.info("The frecuency is not a number. Setting to default: 10 sec");
+					//A job watched twice would have two instances writing
+					//the same store and results files
+					for (String jobId : given) {
+						if (!this.ids.add(String.valueOf(Integer.parseInt(jobId.trim())))) {
+							this.logger.info("The job {} is given more than once, watching it once", jobId.trim());
 						}
-					} else { 
-						this.logger.info("Daemon frecuency not set. Setting to default: 10 sec");
 					}
+					
+					if (this.ids.isEmpty()) {
+						logger.error("The daemon option must have a job id if it isn't along with create option");
+						op = Operation.QUIT;
+
+						return;
+					}
+					
+					this.configFile = cl.getOptionValue("configfile");
+					this.op = Operation.DAEMON;
+					
+					this.parseFrecuency(cl);
 				} catch (NumberFormatException e) {
-					this.logger.error("The id following daemon option must be an integer");
+					this.logger.error("The ids of the jobs to monitorize must be integers");
+					this.op = Operation.QUIT;
+					
+					return;
+				} catch (IOException e) {
+					this.logger.error("The watch list couldn't be read", e);
 					this.op = Operation.QUIT;
 					
 					return;
@@ -153,9 +204,10 @@ class MainBatch implements Runnable {
 					
 					return;
 				} else {
-					if (cl.hasOption("daemon"))
+					if (cl.hasOption("daemon")) {
 						this.daemon = true;
-					else {
+						this.parseFrecuency(cl);
+					} else {
 						if (cl.hasOption("daemonfrecuency"))
 							this.logger.info("Daemon frecuency parameter found, ignoring it as there's not a daemon option");
 					}
@@ -175,6 +227,45 @@ class MainBatch implements Runnable {
 		}
 	}
 
+	/**
+	 * Reads the ids of the jobs of a watch list file: one per line, skipping
+	 * blank lines and the ones starting with #.
+	 */
+	private List<String> readWatchList(String path) throws IOException {
+		List<String> list = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+		
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					list.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		
+		return list;
+	}
+
+	/**
+	 * Reads the daemon frecuency option, in milliseconds.
+	 */
+	private void parseFrecuency(CommandLine cl) {
+		if (cl.hasOption("daemonfrecuency")) {
+			try {
+				this.frecuency = Long.parseLong(cl.getOptionValue("daemonfrecuency"));
+			} catch (NumberFormatException e) {
+				this.logger.info("The frecuency is not a number. Using the configured one");
+			}
+		} else { 
+			this.logger.info("Daemon frecuency not set. Using the configured one");
+		}
+	}
+
 	/**
 	 * Main method of the class that runs the specified options in the
 	 * command line arguments parsed in constructor method
@@ -206,9 +297,14 @@ class MainBatch implements Runnable {
 					this.instance.setPathTR(pathTR);
 					this.instance.setPathGold(pathGold);
 
-					this.instance.create();
-					this.id = this.instance.getParameter("id");
-					logger.info("Job {} created", this.id);
+					if (this.instance.resume()) {
+						this.id = this.instance.getParameter("id");
+						logger.info("Job {} was being populated, resuming it", this.id);
+					} else {
+						this.instance.create();
+						this.id = this.instance.getParameter("id");
+						logger.info("Job {} created", this.id);
+					}
 					this.instance.populate();
 					logger.info("Job {} populated", this.id);
 					this.instance.order();
@@ -228,10 +324,18 @@ class MainBatch implements Runnable {
 				}
 			}
 			case DAEMON: {
-			try {
-				if (this.instance == null) {
+				List<JobsCF> jobs = new ArrayList<JobsCF>();
+				
+				if (this.instance != null) {
+					jobs.add(this.instance);
+				} else {
 					try {
-						this.instance = new JobsCF(this.configFile);
+						for (String jobId : this.ids) {
+							JobsCF job = new JobsCF(this.configFile);
+							
+							job.addParameter("id", jobId);
+							jobs.add(job);
+						}
 					} catch (KeyNotConfigured ex) {
 						this.logger.error("The CrowdFlower API key was not correctly configured");
 						return;
@@ -239,54 +343,209 @@ class MainBatch implements Runnable {
 						this.logger.error("An error ocurred", e);
 						return;
 					}
-
+				}
+				
+				if (jobs.isEmpty()) {
+					return;
+				}
+				
+				//The results of many jobs are written to files named after 
+				//each job, and not opened
+				boolean several = jobs.size() > 1;
+				JobMonitor monitor = new JobMonitor(jobs.get(0).getDaemonThreads());
+				
+				for (JobsCF job : jobs) {
+					String jobId = job.getParameter("id");
+					long minInterval = job.getPollMinInterval();
+					long maxInterval = job.getPollMaxInterval();
+
+					if (this.frecuency != null) {
+						minInterval = this.frecuency;
+						maxInterval = Math.max(minInterval, maxInterval);
+					}
+					
+					File graph = new File("graph.html");
+					if (several) {
+						job.setOutputSuffix(jobId);
+						graph = new File("graph_" + jobId + ".html");
+					}
+					
+					//A job just created is given some time before the first check
+					monitor.watch(job, new PollScheduler(minInterval, maxInterval), graph, !several, 
+							this.op == Operation.CREATE ? minInterval : 0);
+				}
+				
+				this.listenForReports(monitor);
+				
+				try {
+					monitor.run();
+				} catch (InterruptedException ex) {
+					java.util.logging.Logger.getLogger(MainBatch.class.getName()).log(Level.SEVERE, null, ex);
+				}
+				
+				break;
+			}
+			case OFFLINE: {
+				try {
+					this.instance = new JobsCF(this.configFile);
 					this.instance.addParameter("id", this.id);
+					
+					File graph = new File("graph.html");
+					writeGraph(this.instance, graph, Results.STORED);
+					this.logger.info("The html file with the results has been written to the file graph.html");
+					this.logger.info("Opening default HTML handler (usually a browser) to show results");
+					Desktop.getDesktop().open(graph);
+				} catch (KeyNotConfigured ex) {
+					this.logger.error("The CrowdFlower API key was not correctly configured");
+				} catch (Exception e) {
+					this.logger.error("The results of the job " + this.id + " couldn't be read from its store", e);
 				}
+			}
+		}
+	}
 
+	/**
+	 * Starts a thread that writes the results polled so far of every job 
+	 * every time a line is entered, while the daemon waits for the jobs.
+	 */
+	private void listenForReports(final JobMonitor monitor) {
+		Thread listener = new Thread(new Runnable() {
 
-				boolean finished = false;
+			@Override
+			public void run() {
+				BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+				
+				try {
+					while (in.readLine() != null) {
+						monitor.writePartialReports();
+					}
+				} catch (IOException e) {
+					logger.debug("Stopped listening for report requests", e);
+				}
+			}
+		}, "report-requests");
+		
+		listener.setDaemon(true);
+		listener.start();
+		this.logger.info("Press enter at any time to write the results collected so far");
+	}
 
-				if (this.op == Operation.CREATE) {
-					this.logger.info("Waiting first {} seconds", this.frecuency);
-					Thread.sleep(this.frecuency);
+	/**
+	 * Writes the results of a job as an html graph. The graph is written to
+	 * a temporary file next to it, which replaces it once complete, so if
+	 * the results can't be written the previous graph is left untouched.
+	 * The graphs of a job are written one at a time.
+	 * 
+	 * If the data of the charts is written to a directory, each graph gets
+	 * a new one (the configured name followed by a dot and a version), and
+	 * the ones of the former graphs are deleted once the graph is replaced,
+	 * so the former graph keeps its own data until then.
+	 * 
+	 * @param job The job
+	 * @param graph The file where the graph is written
+	 * @param results Which results are written
+	 * @throws IOException If the results couldn't be written
+	 */
+	static void writeGraph(JobsCF job, File graph, Results results) throws IOException {
+		synchronized (job) {
+			File tmp = File.createTempFile(graph.getName(), ".tmp", graph.getAbsoluteFile().getParentFile());
+			File dataDir = job.getReportDataDirectory();
+			File versionDir = null;
+			boolean written = false;
+
+			try {
+				if (dataDir != null) {
+					versionDir = newVersion(dataDir);
+					job.setReportDataDirectory(versionDir);
 				}
 				
-				do {
-					try {
-						if ((finished = this.instance.isFinished()) == true) {
-							this.logger.info("The job {} has already finished. Preparing results", this.id);
-							String graph = this.instance.processResults();
-
-							if (graph == null) {
-								System.err.println("Results could not been retrieved due some unexpected error");
-							} else {
-								FileOutputStream fos = new FileOutputStream(new File("graph.html"));
-								fos.write(graph.getBytes());
-								fos.close();
-
-								this.logger.info("The html file with the results has been written to the file graph.html");
-								this.logger.info("Opening default HTML handler (usually a browser) to show results");
-								Desktop.getDesktop().open(new File("graph.html"));
-
-								finished = true;
-							}
-						} else {
-							this.logger.info("The job {} hasn't finished yet. Waiting {} sec. to check again", this.frecuency);
-							
-							Thread.sleep(this.frecuency);
-						}
-					} catch (Exception e) {
-						this.logger.error("Some error ocurred either checking on the state of the job or gathering its results", e);
-						return;
+				Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+
+				try {
+					switch (results) {
+						case STORED:
+							job.processStoredResults(out);
+							break;
+						case POLLED:
+							job.processPolledResults(out);
+							break;
+						case PARTIAL:
+							job.writePolledReport(out);
+							break;
 					}
-				} while (!finished);
+				} finally {
+					out.close();
+				}
 
-				break;
-			} catch (InterruptedException ex) {
-				java.util.logging.Logger.getLogger(MainBatch.class.getName()).log(Level.SEVERE, null, ex);
+				//Renaming over an existing file fails on some platforms
+				if (!tmp.renameTo(graph) && !(graph.delete() && tmp.renameTo(graph))) {
+					throw new IOException("The graph couldn't be written to " + graph);
+				}
+				
+				written = true;
+			} finally {
+				job.setReportDataDirectory(dataDir);
+				
+				if (!written) {
+					tmp.delete();
+					if (versionDir != null) {
+						deleteDirectory(versionDir);
+					}
+				}
+			}
+			
+			if (versionDir != null) {
+				deleteVersions(dataDir, versionDir);
 			}
+		}
+	}
+	
+	/**
+	 * Name of a new version of a data directory, not used by any other.
+	 */
+	private static File newVersion(File dataDir) {
+		File parent = dataDir.getAbsoluteFile().getParentFile();
+		long version = System.currentTimeMillis();
+		File versionDir;
+		
+		do {
+			versionDir = new File(parent, dataDir.getName() + "." + Long.toString(version++, 36));
+		} while (versionDir.exists());
+		
+		return versionDir;
+	}
+	
+	/**
+	 * Deletes every version of a data directory but the current one.
+	 */
+	private static void deleteVersions(File dataDir, File current) {
+		File parent = dataDir.getAbsoluteFile().getParentFile();
+		String prefix = dataDir.getName() + ".";
+		File[] files = parent.listFiles();
+		
+		if (files == null) {
+			return;
+		}
+		
+		for (File f : files) {
+			if (f.isDirectory() && f.getName().startsWith(prefix) && !f.getName().equals(current.getName())) {
+				deleteDirectory(f);
+			}
+		}
+	}
+	
+	/**
+	 * Deletes a data directory, which only holds files.
+	 */
+	private static void deleteDirectory(File dir) {
+		File[] files = dir.listFiles();
+		
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
 			}
 		}
+		dir.delete();
 	}
 
 	public static void main(String[] args) {
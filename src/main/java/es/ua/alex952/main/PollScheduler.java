@@ -0,0 +1,177 @@
+/**
+ * CrowdTransEval, a toolkit for evaluating machine translation
+ * system by using crowdsourcing.
+ * Copyright (C) 2012 Alejandro Navarro Fulleda <anf5@alu.ua.es>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package es.ua.alex952.main;
+
+import java.util.Random;
+
+/**
+ * Decides how long the daemon waits before checking on a job again.
+ *
+ * The completion time is estimated from the throughput of judgments seen
+ * so far, and the daemon waits half of the time left, so it checks rarely
+ * while the job is far from finishing and more often as it gets close.
+ * While no judgments arrive the wait doubles. On errors the wait backs off
+ * exponentially with jitter. Every wait is kept between the bounds given.
+ *
+ * @author alex952
+ */
+public class PollScheduler {
+
+	/**
+	 * Weight of the last throughput measure in the estimation
+	 */
+	private static final double SMOOTHING = 0.3;
+
+	private long minDelay;
+	private long maxDelay;
+	private long delay;
+	private Random random = new Random();
+
+	private long lastTime = -1;
+	private int lastDone = 0;
+
+	/**
+	 * Judgments per millisecond, smoothed (0 if unknown)
+	 */
+	private double rate = 0.0;
+	private int failures = 0;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param minDelay Minimum wait between checks, in milliseconds
+	 * @param maxDelay Maximum wait between checks, in milliseconds
+	 */
+	public PollScheduler(long minDelay, long maxDelay) {
+		this.minDelay = Math.max(1, minDelay);
+		this.maxDelay = Math.max(this.minDelay, maxDelay);
+		this.delay = this.minDelay;
+	}
+
+	/**
+	 * Wait after a successful check.
+	 *
+	 * @param done Judgments collected so far
+	 * @param expected Judgments the job will have when it finishes, 0 if
+	 * unknown
+	 * @return The wait until the next check, in milliseconds
+	 */
+	public long next(int done, int expected) {
+		return this.next(done, expected, System.currentTimeMillis());
+	}
+
+	long next(int done, int expected, long now) {
+		this.failures = 0;
+
+		if (this.lastTime >= 0 && now > this.lastTime) {
+			double measured = (double) (done - this.lastDone) / (now - this.lastTime);
+
+			this.rate = this.rate == 0.0 ? measured : SMOOTHING * measured + (1 - SMOOTHING) * this.rate;
+		}
+
+		boolean progress = done > this.lastDone;
+		this.lastTime = now;
+		this.lastDone = done;
+
+		if (this.rate > 0.0 && expected > done) {
+			this.delay = (long) ((expected - done) / this.rate / 2);
+		} else if (!progress) {
+			this.delay = this.delay * 2;
+		}
+
+		this.delay = Math.min(this.maxDelay, Math.max(this.minDelay, this.delay));
+
+		return this.delay;
+	}
+
+	/**
+	 * Wait after a failed check: the minimum wait doubled for every
+	 * consecutive failure, randomized between its half and its whole so
+	 * many daemons don't retry at once.
+	 *
+	 * @return The wait until the next check, in milliseconds
+	 */
+	public long failed() {
+		this.failures++;
+
+		long backoff = this.minDelay << Math.min(this.failures - 1, 30);
+		if (backoff <= 0 || backoff > this.maxDelay) {
+			backoff = this.maxDelay;
+		}
+
+		return backoff / 2 + (long) (this.random.nextDouble() * (backoff / 2 + 1));
+	}
+
+	/**
+	 * Number of consecutive failed checks.
+	 *
+	 * @return The failures since the last successful check
+	 */
+	public int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Simulation of a job of 1000 units with 3 judgments each, judged at an
+	 * irregular pace after a slow start, comparing the number of checks of
+	 * a fixed 10 s wait with the adaptive one bounded to 10 s and 30 min.
+	 */
+	public static void main(String[] args) {
+		int expected = 3000;
+		Random pace = new Random(42);
+		int[] perMinute = new int[24 * 60];
+		int total = 0;
+
+		for (int m = 0; total < expected; m++) {
+			//Nothing for the first hour, then some 3 judgments a minute
+			int n = m < 60 ? 0 : pace.nextInt(7);
+
+			n = Math.min(n, expected - total);
+			perMinute[m] = n;
+			total += n;
+		}
+
+		long end = 0;
+		int[] cumulative = new int[perMinute.length + 1];
+		for (int m = 0; m < perMinute.length; m++) {
+			cumulative[m + 1] = cumulative[m] + perMinute[m];
+			if (cumulative[m + 1] == expected && end == 0) {
+				end = (m + 1) * 60000L;
+			}
+		}
+
+		long fixedChecks = end / 10000 + 1;
+
+		PollScheduler scheduler = new PollScheduler(10000, 30 * 60000);
+		long now = 0;
+		int checks = 0;
+		while (true) {
+			checks++;
+			int done = cumulative[(int) Math.min(now / 60000, perMinute.length)];
+			if (done == expected) {
+				break;
+			}
+			now += scheduler.next(done, expected, now);
+		}
+
+		System.out.println("Job finished after " + (end / 60000) + " min");
+		System.out.println("Fixed wait: " + fixedChecks + " checks");
+		System.out.println("Adaptive wait: " + checks + " checks, results " + ((now - end) / 1000) + " s after finishing");
+	}
+}